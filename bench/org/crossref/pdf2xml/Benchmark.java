@@ -0,0 +1,64 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A single benchmark, and a runner for it. Each iteration calls run() once
+ * after a fresh setUp(), and run() answers how many operations (pages,
+ * glyphs, runs) it performed so that results can be reported per
+ * operation and compared across input sizes.
+ */
+public abstract class Benchmark {
+    
+    public static final int WARMUP = 5;
+    
+    public static final int ITERATIONS = 15;
+    
+    public abstract String getName();
+    
+    /**
+     * Prepare the input for one iteration. Not timed.
+     */
+    public void setUp() throws IOException {
+    }
+    
+    /**
+     * @return Answers the number of operations performed.
+     */
+    public abstract long run() throws IOException;
+    
+    /**
+     * Release anything setUp() acquired. Not timed.
+     */
+    public void tearDown() throws IOException {
+    }
+    
+    /**
+     * Run b for WARMUP iterations, then time it for ITERATIONS more and
+     * print the median time per operation and operations per second.
+     */
+    public static void measure(Benchmark b, PrintStream out) 
+            throws IOException {
+        double[] nsPerOp = new double[ITERATIONS];
+        
+        for (int i=-WARMUP; i<ITERATIONS; i++) {
+            b.setUp();
+            final long start = System.nanoTime();
+            final long ops = b.run();
+            final long elapsed = System.nanoTime() - start;
+            b.tearDown();
+            
+            if (i >= 0) {
+                nsPerOp[i] = (double) elapsed / Math.max(ops, 1);
+            }
+        }
+        
+        Arrays.sort(nsPerOp);
+        final double median = nsPerOp[ITERATIONS / 2];
+        out.println(String.format("%-40s %12.1f ns/op %12.1f ops/s", 
+                                  b.getName(), median, 1e9 / median));
+    }
+
+}
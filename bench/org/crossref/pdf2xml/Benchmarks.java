@@ -0,0 +1,68 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmark suite: extraction per page over the documents in
+ * test-data and a generated large document, coalescing and duplicate
+ * removal on synthetic pages of several densities, spatial queries, Text
+ * allocation, and XML serialization.
+ *
+ * Pass the test-data directory as the first argument, and optionally the
+ * number of pages for the generated document as the second.
+ */
+public class Benchmarks {
+    
+    private static final int[] GLYPH_COUNTS = { 1000, 5000, 20000, 50000 };
+    
+    private static final int DEFAULT_SYNTHETIC_PAGES = 200;
+    
+    public static void main(String[] args) throws IOException {
+        File testData = new File(args.length > 0 ? args[0] : "test-data");
+        int syntheticPages = args.length > 1 
+                           ? Integer.parseInt(args[1])
+                           : DEFAULT_SYNTHETIC_PAGES;
+        
+        List<File> documents = new ArrayList<File>();
+        for (String name : new String[] { "simple.pdf", 
+                                          "two_paragraphs.pdf",
+                                          "fake_article.pdf" }) {
+            documents.add(new File(testData, name));
+        }
+        
+        File synthetic = File.createTempFile("pdf2xml-bench", ".pdf");
+        synthetic.deleteOnExit();
+        SyntheticDocuments.create(synthetic, syntheticPages);
+        documents.add(synthetic);
+        
+        for (File document : documents) {
+            ExtractionBenchmark extraction = new ExtractionBenchmark(document);
+            try {
+                Benchmark.measure(extraction, System.out);
+                Benchmark.measure(
+                    new SerializationBenchmark(document.getName(),
+                                               extraction.extract()),
+                    System.out);
+            } finally {
+                extraction.close();
+            }
+        }
+        
+        DensePageBenchmark.checkDoubledLetters();
+        DensePageBenchmark.checkDoubledLine();
+        for (int glyphCount : GLYPH_COUNTS) {
+            Benchmark.measure(new DensePageBenchmark(glyphCount), System.out);
+        }
+        
+        for (int glyphCount : GLYPH_COUNTS) {
+            Benchmark.measure(new SpatialQueryBenchmark(glyphCount), 
+                              System.out);
+        }
+        
+        Benchmark.measure(new TextBenchmark(), System.out);
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.crossref.pdf2xml.data.FontInfo;
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.PageView;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Times row coalescing and duplicate removal on a synthetic table-like
+ * page, per glyph. Run at several densities, the time per glyph should
+ * stay roughly flat; if it climbs with page size then one of the stages
+ * has gone quadratic again.
+ */
+public class DensePageBenchmark extends Benchmark {
+    
+    static final int GLYPHS_PER_ROW = 200;
+    
+    private static final int GLYPHS_PER_CELL = 8;
+    
+    private static final FontInfo FONT = new FontInfo("Helvetica");
+    
+    private static final int[] COLORS = { 0x000000, 0xcc0000, 0x0000cc };
+    
+    private int glyphCount;
+    
+    private TextExtractor te;
+    
+    private Page page;
+    
+    public DensePageBenchmark(int newGlyphCount) throws IOException {
+        glyphCount = newGlyphCount;
+        te = new TextExtractor();
+    }
+    
+    @Override
+    public String getName() {
+        return "coalesce+dedup, " + glyphCount + " glyphs";
+    }
+    
+    @Override
+    public void setUp() {
+        page = createDensePage(glyphCount);
+    }
+    
+    @Override
+    public long run() {
+        te.coalesceRows(page);
+        te.removeDuplicates(page);
+        page.getText();
+        return glyphCount;
+    }
+    
+    /**
+     * Check that duplicate removal, with a baseline tolerance wider than
+     * a glyph, takes out a row drawn twice, the second time offset as fake
+     * bold is, but none of the doubled letters the row is made of.
+     * 
+     * @throws IllegalStateException if it doesn't.
+     */
+    static void checkDoubledLetters() throws IOException {
+        TextExtractor te = new TextExtractor();
+        te.setBaselineTolerance(3);
+        
+        // An 'l' at 10pt is about 2.8pt wide, so the row reads "llll...".
+        Page page = new Page(null, 1);
+        for (int copy=0; copy<2; copy++) {
+            for (int col=0; col<GLYPHS_PER_ROW; col++) {
+                page.addText(Text.newFor("l", col * 2.8f + copy * 0.3f, 12f,
+                                         2.8f, 10f, 10f, FONT, 0, 0));
+            }
+        }
+        
+        final int removed = te.removeDuplicates(page);
+        if (removed != GLYPHS_PER_ROW) {
+            throw new IllegalStateException("Removed " + removed 
+                                            + " of a row of doubled letters"
+                                            + " drawn twice, rather than "
+                                            + GLYPHS_PER_ROW + ".");
+        }
+    }
+    
+    /**
+     * Check that, with duplicates removed before coalescing, a line drawn
+     * twice in the same place and style is extracted once.
+     * 
+     * @throws IllegalStateException if it isn't.
+     */
+    static void checkDoubledLine() throws IOException {
+        File doubled = File.createTempFile("pdf2xml-doubled", ".pdf");
+        try {
+            SyntheticDocuments.createDoubledLine(doubled);
+            
+            DocumentExtractor de = 
+                new DocumentExtractor(new DocumentLoader(""));
+            de.setDeduplicateFirst(true);
+            final List<String> runs = new ArrayList<String>();
+            de.extract(doubled, new PageListener() {
+                @Override
+                public void pageExtracted(PageView page) {
+                    for (Text t : page.getText()) {
+                        runs.add(t.getRun());
+                    }
+                }
+            });
+            
+            if (runs.size() != 1 
+                    || !runs.get(0).equals(SyntheticDocuments.getLine())) {
+                throw new IllegalStateException("Extracted " + runs 
+                                                + " from a line drawn"
+                                                + " twice.");
+            }
+        } finally {
+            doubled.delete();
+        }
+    }
+    
+    /**
+     * @return Answers a page of glyphCount single-character runs laid out
+     * as a table. Each cell is drawn in one colour, neighbouring cells in
+     * different ones, and every tenth row is drawn twice.
+     */
+    static Page createDensePage(int glyphCount) {
+        Page page = new Page(null, 1);
+        int drawn = 0;
+        for (int row=0; drawn<glyphCount; row++) {
+            final int copies = row % 10 == 0 ? 2 : 1;
+            for (int copy=0; copy<copies; copy++) {
+                for (int col=0; col<GLYPHS_PER_ROW && drawn<glyphCount; col++) {
+                    final int color = 
+                        COLORS[(col / GLYPHS_PER_CELL) % COLORS.length];
+                    page.addText(Text.newFor("x", col * 5f, 12f + row * 12f,
+                                             5f, 10f, 10f, FONT,
+                                             color, color));
+                    drawn++;
+                }
+            }
+        }
+        return page;
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Times TextExtractor.processStream() over every page of a document, per
+ * page. The document is loaded once, outside the timed section.
+ */
+public class ExtractionBenchmark extends Benchmark {
+    
+    private File file;
+    
+    private PDDocument doc;
+    
+    private List<PDPage> pages;
+    
+    public ExtractionBenchmark(File newFile) {
+        file = newFile;
+    }
+    
+    @Override
+    public String getName() {
+        return "processStream, " + file.getName();
+    }
+    
+    @Override
+    public void setUp() throws IOException {
+        if (doc == null) {
+            doc = new DocumentLoader().load(file);
+            pages = DocumentLoader.getPages(doc);
+        }
+    }
+    
+    @Override
+    public long run() throws IOException {
+        TextExtractor te = new TextExtractor();
+        te.setRetainPages(false);
+        
+        int pageNumber = 1;
+        for (PDPage page : pages) {
+            te.processPage(page, pageNumber++);
+        }
+        return pages.size();
+    }
+    
+    /**
+     * @return Answers the pages of the document, extracted.
+     */
+    public List<PageView> extract() throws IOException {
+        setUp();
+        TextExtractor te = new TextExtractor();
+        int pageNumber = 1;
+        for (PDPage page : pages) {
+            te.processPage(page, pageNumber++);
+        }
+        return te.getPages();
+    }
+    
+    public void close() throws IOException {
+        if (doc != null) {
+            doc.close();
+            doc = null;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Times writing already extracted pages as XML, per page. Output goes to
+ * a Writer that discards it, so only serialization is measured.
+ */
+public class SerializationBenchmark extends Benchmark {
+    
+    private String name;
+    
+    private List<PageView> pages;
+    
+    public SerializationBenchmark(String newName, List<PageView> newPages) {
+        name = newName;
+        pages = newPages;
+    }
+    
+    @Override
+    public String getName() {
+        return "toXml, " + name;
+    }
+    
+    @Override
+    public long run() throws IOException {
+        XmlPageWriter out = new XmlPageWriter(new NullWriter());
+        out.writeStart();
+        for (PageView page : pages) {
+            out.writePage(page);
+        }
+        out.writeEnd();
+        return pages.size();
+    }
+    
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+        @Override
+        public void flush() {
+        }
+        @Override
+        public void close() {
+        }
+    }
+
+}
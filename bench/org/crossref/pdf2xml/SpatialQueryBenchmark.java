@@ -0,0 +1,59 @@
+package org.crossref.pdf2xml;
+
+import java.util.Random;
+
+import org.crossref.pdf2xml.data.Page;
+
+/**
+ * Times region and nearest-neighbour queries on a synthetic page, per
+ * query, including building the page's spatial index for the first.
+ */
+public class SpatialQueryBenchmark extends Benchmark {
+    
+    private static final int QUERIES = 10000;
+    
+    private int glyphCount;
+    
+    private Page page;
+    
+    private float[] points;
+    
+    public SpatialQueryBenchmark(int newGlyphCount) {
+        glyphCount = newGlyphCount;
+        
+        // Query points are spread over the area the page's text covers.
+        final float width = DensePageBenchmark.GLYPHS_PER_ROW * 5f;
+        final float height = 
+            (glyphCount / DensePageBenchmark.GLYPHS_PER_ROW + 1) * 12f;
+        Random random = new Random(glyphCount);
+        points = new float[QUERIES * 2];
+        for (int q=0; q<QUERIES; q++) {
+            points[q * 2] = random.nextFloat() * width;
+            points[q * 2 + 1] = random.nextFloat() * height;
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "spatial query, " + glyphCount + " glyphs";
+    }
+    
+    @Override
+    public void setUp() {
+        page = DensePageBenchmark.createDensePage(glyphCount);
+    }
+    
+    @Override
+    public long run() {
+        for (int q=0; q<QUERIES; q++) {
+            final float x = points[q * 2], y = points[q * 2 + 1];
+            if (q % 2 == 0) {
+                page.getTextIntersecting(x, y, 50, 20);
+            } else {
+                page.getTextNearest(x, y, 5);
+            }
+        }
+        return QUERIES;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.exceptions.WrappedIOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Generates large PDFs of plain running text, for benchmarks that need
+ * more pages than the samples in test-data have.
+ */
+public class SyntheticDocuments {
+    
+    private static final String LINE = 
+        "The quick brown fox jumps over the lazy dog, 0123456789 times.";
+    
+    private static final int LINES_PER_PAGE = 60;
+    
+    /**
+     * Write a document of pageCount pages of text to f. Every fifth line
+     * is set in bold so that runs change style within the page.
+     */
+    public static void create(File f, int pageCount) throws IOException {
+        PDDocument doc = new PDDocument();
+        
+        try {
+            for (int p=0; p<pageCount; p++) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                
+                PDPageContentStream content = 
+                    new PDPageContentStream(doc, page);
+                content.beginText();
+                content.moveTextPositionByAmount(50, 750);
+                for (int line=0; line<LINES_PER_PAGE; line++) {
+                    PDFont font = line % 5 == 0 
+                                ? PDType1Font.HELVETICA_BOLD
+                                : PDType1Font.HELVETICA;
+                    content.setFont(font, 10);
+                    content.drawString(LINE);
+                    content.moveTextPositionByAmount(0, -12);
+                }
+                content.endText();
+                content.close();
+            }
+            
+            doc.save(f.getPath());
+        } catch (COSVisitorException e) {
+            throw new WrappedIOException("Can't write document: ", e);
+        } finally {
+            doc.close();
+        }
+    }
+    
+    /**
+     * Write a document of one page to f, on which a single line of text is
+     * drawn twice in the same place and style, as some generators draw
+     * bold text.
+     */
+    public static void createDoubledLine(File f) throws IOException {
+        PDDocument doc = new PDDocument();
+        
+        try {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            
+            PDPageContentStream content = new PDPageContentStream(doc, page);
+            for (int copy=0; copy<2; copy++) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 10);
+                content.moveTextPositionByAmount(50, 750);
+                content.drawString(LINE);
+                content.endText();
+            }
+            content.close();
+            
+            doc.save(f.getPath());
+        } catch (COSVisitorException e) {
+            throw new WrappedIOException("Can't write document: ", e);
+        } finally {
+            doc.close();
+        }
+    }
+    
+    /**
+     * @return Answers the line of text that the documents are made of.
+     */
+    static String getLine() {
+        return LINE;
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.crossref.pdf2xml;
+
+import org.crossref.pdf2xml.data.Colors;
+import org.crossref.pdf2xml.data.FontInfo;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Times allocating Text objects through Text.newFor(), per Text.
+ */
+public class TextBenchmark extends Benchmark {
+    
+    private static final int COUNT = 100000;
+    
+    private static final FontInfo FONT = new FontInfo("Helvetica");
+    
+    private static final int COLOR = Colors.BLACK;
+    
+    /* Keeps the allocations from being optimised away. */
+    private Text[] texts = new Text[COUNT];
+    
+    @Override
+    public String getName() {
+        return "Text.newFor";
+    }
+    
+    @Override
+    public long run() {
+        for (int i=0; i<COUNT; i++) {
+            texts[i] = Text.newFor("x", i % 500, i / 500, 5f, 10f, 10f,
+                                   FONT, COLOR, COLOR);
+        }
+        return COUNT;
+    }
+
+}
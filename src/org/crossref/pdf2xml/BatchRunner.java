@@ -0,0 +1,205 @@
+package org.crossref.pdf2xml;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts many documents in one JVM on a bounded pool of threads,
+ * writing one output file per input. A document that can't be read is
+ * reported and skipped rather than stopping the batch.
+ *
+ * Output files are named after their inputs. Where two inputs from
+ * different directories share a name, the later one's output is given a
+ * numbered suffix, so that no two documents write the same file.
+ */
+public class BatchRunner {
+    
+    private static final String PDF_SUFFIX = ".pdf";
+    
+    private static final String XML_SUFFIX = ".xml";
+    
+    private static final String BINARY_SUFFIX = ".p2xb";
+    
+    private DocumentExtractor extractor;
+    
+    private File outputDir;
+    
+    private int jobs;
+    
+    private PrintStream log;
+    
+    private List<File> inputs = new ArrayList<File>();
+    
+    /* The output file of each of inputs, by position. */
+    private List<File> outputs = new ArrayList<File>();
+    
+    /* Output names given out so far, in lower case, since they may end up
+     * on a file system that ignores case. */
+    private Set<String> outputNames = new HashSet<String>();
+    
+    /* Inputs that couldn't even be listed. */
+    private int unreadableInputs = 0;
+    
+    private String statsFormat = null;
+    
+    public BatchRunner(DocumentExtractor newExtractor, File newOutputDir,
+                       int newJobs, PrintStream newLog) {
+        extractor = newExtractor;
+        outputDir = newOutputDir;
+        jobs = newJobs;
+        log = newLog;
+    }
+    
+    /**
+     * Log stats for each document in format, "json" or "line", or not at
+     * all if format is null.
+     */
+    public void setStatsFormat(String format) {
+        statsFormat = format;
+    }
+    
+    /**
+     * Add the PDF files in a directory, or the files listed one per line
+     * in a manifest file, to the batch. A directory that can't be listed
+     * is reported, and counted as a failure when the batch is run.
+     */
+    public void addInput(File f) throws IOException {
+        if (f.isDirectory()) {
+            File[] pdfs = f.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File candidate) {
+                    return candidate.isFile() && candidate.getName()
+                            .toLowerCase().endsWith(PDF_SUFFIX);
+                }
+            });
+            if (pdfs == null) {
+                log.println("Couldn't read directory '" + f + "'.");
+                unreadableInputs++;
+                return;
+            }
+            Arrays.sort(pdfs);
+            for (File pdf : pdfs) {
+                addDocument(pdf);
+            }
+        } else {
+            BufferedReader reader = new BufferedReader(new FileReader(f));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() > 0 && !line.startsWith("#")) {
+                        addDocument(new File(line));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+    
+    /**
+     * Add a single document to the batch, choosing an output file for it
+     * that no other document in the batch writes.
+     */
+    private void addDocument(File input) {
+        String base = input.getName();
+        if (base.toLowerCase().endsWith(PDF_SUFFIX)) {
+            base = base.substring(0, base.length() - PDF_SUFFIX.length());
+        }
+        final String suffix = extractor.isBinary() ? BINARY_SUFFIX : XML_SUFFIX;
+        
+        String name = base;
+        for (int n=2; !outputNames.add((name + suffix).toLowerCase()); n++) {
+            name = base + "-" + n;
+        }
+        File output = new File(outputDir, name + suffix);
+        if (!name.equals(base)) {
+            log.println("Writing output for '" + input + "' to '" + output
+                        + "', as another input has the same name.");
+        }
+        
+        inputs.add(input);
+        outputs.add(output);
+    }
+    
+    /**
+     * Extract every input, then report how many documents were processed
+     * and how quickly.
+     * 
+     * @return Answers the number of documents that couldn't be extracted.
+     */
+    public int run() throws InterruptedException {
+        final AtomicInteger failures = new AtomicInteger(unreadableInputs);
+        final long start = System.currentTimeMillis();
+        
+        outputDir.mkdirs();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        for (int i=0; i<inputs.size(); i++) {
+            final File input = inputs.get(i);
+            final File output = outputs.get(i);
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!extract(input, output)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        
+        final double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        log.println(String.format("Processed %d documents (%d failed) in "
+                                  + "%.1fs, %.2f docs/sec.", 
+                                  inputs.size(), failures.get(), seconds,
+                                  seconds > 0 ? inputs.size() / seconds : 0));
+        
+        return failures.get();
+    }
+    
+    private boolean extract(File input, File output) {
+        ExtractionStats stats = 
+            statsFormat == null ? null : new ExtractionStats();
+        
+        try {
+            OutputStream os = 
+                new BufferedOutputStream(new FileOutputStream(output));
+            try {
+                extractor.extract(input, os, stats);
+            } finally {
+                os.close();
+            }
+            if (stats != null) {
+                log.println(stats.format(statsFormat, input.getPath()));
+            }
+            return true;
+        } catch (Throwable e) {
+            // Anything at all can go wrong inside PDFBox on a bad document,
+            // down to a StackOverflowError on deeply nested content or an
+            // OutOfMemoryError, and one bad document mustn't take down the
+            // rest of the batch. Its memory is freed once it is dropped.
+            output.delete();
+            log.println("Couldn't read file '" + input + "': " + e);
+            return false;
+        }
+    }
+
+}
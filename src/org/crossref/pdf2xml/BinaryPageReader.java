@@ -0,0 +1,202 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import org.crossref.pdf2xml.data.FontInfo;
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.Segmentation;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Reads pages written by BinaryPageWriter back into Page objects. The
+ * input is a ByteBuffer, so a file can be memory-mapped with open()
+ * rather than read into the heap.
+ */
+public class BinaryPageReader {
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private ByteBuffer buffer;
+    
+    /* Runs that share a font share a FontInfo, just as they do when
+     * extracted, so that hasMatchingStyle() holds between them. */
+    private HashMap<String, FontInfo> fontInfos = 
+        new HashMap<String, FontInfo>();
+    
+    public BinaryPageReader(ByteBuffer newBuffer) throws IOException {
+        buffer = newBuffer;
+        
+        byte[] magic = new byte[BinaryPageWriter.MAGIC.length];
+        buffer.get(magic);
+        for (int i=0; i<magic.length; i++) {
+            if (magic[i] != BinaryPageWriter.MAGIC[i]) {
+                throw new IOException("Not a pdf2xml binary file.");
+            }
+        }
+        
+        final int version = buffer.getShort();
+        if (version != BinaryPageWriter.VERSION) {
+            throw new IOException("Unsupported pdf2xml binary version " 
+                                  + version + ".");
+        }
+    }
+    
+    /**
+     * @return Answers a reader over the memory-mapped contents of f.
+     */
+    public static BinaryPageReader open(File f) throws IOException {
+        FileInputStream in = new FileInputStream(f);
+        try {
+            FileChannel channel = in.getChannel();
+            return new BinaryPageReader(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // The mapping stays valid once the channel is closed.
+            in.close();
+        }
+    }
+    
+    public boolean hasNext() {
+        return buffer.hasRemaining();
+    }
+    
+    /**
+     * Skip over the next page without reading it.
+     */
+    public void skip() {
+        final int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+    
+    public Page next() throws IOException {
+        final int length = buffer.getInt();
+        final int end = buffer.position() + length;
+        
+        final int number = buffer.getInt();
+        PDRectangle clipBox = new PDRectangle();
+        clipBox.setLowerLeftX(buffer.getFloat());
+        clipBox.setLowerLeftY(buffer.getFloat());
+        clipBox.setUpperRightX(buffer.getFloat());
+        clipBox.setUpperRightY(buffer.getFloat());
+        Page page = new Page(clipBox, number);
+        
+        final int styleCount = buffer.getInt();
+        FontInfo[] styleFonts = new FontInfo[styleCount];
+        int[] styleStrokeColors = new int[styleCount];
+        int[] styleColors = new int[styleCount];
+        for (int i=0; i<styleCount; i++) {
+            styleFonts[i] = getFontInfo(readString(), readString(), 
+                                        readString());
+            styleStrokeColors[i] = buffer.getInt();
+            styleColors[i] = buffer.getInt();
+        }
+        
+        final int n = buffer.getInt();
+        float[] top = readFloats(n);
+        float[] left = readFloats(n);
+        float[] width = readFloats(n);
+        float[] height = readFloats(n);
+        float[] baseline = readFloats(n);
+        float[] size = readFloats(n);
+        int[] style = readInts(n);
+        
+        for (int i=0; i<n; i++) {
+            page.addText(Text.newFor(readString(), left[i], top[i], 
+                                     baseline[i], width[i], height[i], 
+                                     size[i], styleFonts[style[i]],
+                                     styleStrokeColors[style[i]],
+                                     styleColors[style[i]]));
+        }
+        
+        if (buffer.get() != 0) {
+            page.setSegmentation(readSegmentation(n));
+        }
+        
+        if (buffer.get() != 0) {
+            page.setBlocks(readInts(n));
+        }
+        
+        if (buffer.position() != end) {
+            throw new IOException("Corrupt page record for page " 
+                                  + number + ".");
+        }
+        
+        return page;
+    }
+    
+    public List<Page> readAll() throws IOException {
+        List<Page> pages = new ArrayList<Page>();
+        while (hasNext()) {
+            pages.add(next());
+        }
+        return pages;
+    }
+    
+    private Segmentation readSegmentation(int runCount) {
+        final int lineCount = buffer.getInt();
+        int[] lineStarts = new int[lineCount + 1];
+        for (int line=0; line<lineCount; line++) {
+            lineStarts[line + 1] = lineStarts[line] + buffer.getInt();
+        }
+        int[] lineRuns = readInts(lineStarts[lineCount]);
+        
+        int[] runWords = new int[runCount + 1];
+        for (int run=0; run<runCount; run++) {
+            runWords[run + 1] = runWords[run] + buffer.getInt();
+        }
+        final int words = runWords[runCount];
+        int[] begins = readInts(words);
+        int[] ends = readInts(words);
+        float[] lefts = readFloats(words);
+        float[] widths = readFloats(words);
+        
+        return new Segmentation(lineStarts, lineRuns, runWords, 
+                                begins, ends, lefts, widths);
+    }
+    
+    private int[] readInts(int n) {
+        int[] is = new int[n];
+        for (int i=0; i<n; i++) {
+            is[i] = buffer.getInt();
+        }
+        return is;
+    }
+    
+    private float[] readFloats(int n) {
+        float[] fs = new float[n];
+        for (int i=0; i<n; i++) {
+            fs[i] = buffer.getFloat();
+        }
+        return fs;
+    }
+    
+    private String readString() {
+        final int length = buffer.getInt();
+        ByteBuffer utf8 = buffer.slice();
+        utf8.limit(length);
+        buffer.position(buffer.position() + length);
+        return UTF8.decode(utf8).toString();
+    }
+    
+    private FontInfo getFontInfo(String baseFont, String family, 
+                                 String face) {
+        final String key = baseFont + '\0' + family + '\0' + face;
+        FontInfo info = fontInfos.get(key);
+        if (info == null) {
+            info = FontInfo.forNames(baseFont, family, face);
+            fontInfos.put(key, info);
+        }
+        return info;
+    }
+
+}
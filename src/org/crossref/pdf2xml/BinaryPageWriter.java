@@ -0,0 +1,228 @@
+package org.crossref.pdf2xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import org.crossref.pdf2xml.data.PageView;
+import org.crossref.pdf2xml.data.Segmentation;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Writes pages in a compact binary format that BinaryPageReader can read
+ * back into Page objects without any parsing of text. All numbers are
+ * big-endian.
+ *
+ * <pre>
+ * file    := "P2XB" version:u16 page*
+ * page    := length:i32 body           (length of body in bytes)
+ * body    := number:i32 llx:f32 lly:f32 urx:f32 ury:f32
+ *            styleCount:i32 style[styleCount]
+ *            runCount:i32
+ *            top:f32[runCount] left:f32[runCount] width:f32[runCount]
+ *            height:f32[runCount] baseline:f32[runCount] 
+ *            size:f32[runCount] styleIndex:i32[runCount]
+ *            run:str[runCount]
+ *            segmented:u8 segmentation?   (present if segmented is 1)
+ *            blocked:u8 block:i32[runCount]?   (present if blocked is 1)
+ * style   := baseFont:str family:str face:str 
+ *            stroke:i32 color:i32           (both 0xrrggbb)
+ * segmentation := lineCount:i32 lineSize:i32[lineCount]
+ *            lineRun:i32[runCount]        (run indexes, line by line)
+ *            wordCount:i32[runCount]      (words in each run)
+ *            begin:i32[words] end:i32[words]
+ *            left:f32[words] width:f32[words]
+ * str     := length:i32 UTF-8 bytes
+ * </pre>
+ *
+ * Each page is self-contained and prefixed by its length, so a reader can
+ * skip straight to the page it wants, and the run geometry is stored in
+ * columns so that it can be scanned without touching the run text.
+ *
+ * Fonts are stored by name, without their metrics. Runs read back in the
+ * same font share a FontInfo, and so match each other's style, but they
+ * don't match runs extracted from the document itself.
+ */
+public class BinaryPageWriter implements PageWriter {
+    
+    static final byte[] MAGIC = { 'P', '2', 'X', 'B' };
+    
+    static final int VERSION = 1;
+    
+    private DataOutputStream out;
+    
+    private ExtractionStats stats = null;
+    
+    public BinaryPageWriter(OutputStream os) {
+        out = new DataOutputStream(os);
+    }
+    
+    @Override
+    public void setStats(ExtractionStats newStats) {
+        stats = newStats;
+    }
+    
+    @Override
+    public void writeStart() throws IOException {
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        if (stats != null) {
+            stats.add(ExtractionStats.Counter.BYTES_WRITTEN, 
+                      MAGIC.length + 2);
+        }
+    }
+    
+    @Override
+    public void writePage(PageView page) throws IOException {
+        final long start = System.nanoTime();
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        List<Text> texts = page.getText();
+        final int n = texts.size();
+        
+        body.writeInt(page.getNumber());
+        PDRectangle cb = page.getClipBox();
+        body.writeFloat(cb == null ? 0 : cb.getLowerLeftX());
+        body.writeFloat(cb == null ? 0 : cb.getLowerLeftY());
+        body.writeFloat(cb == null ? 0 : cb.getUpperRightX());
+        body.writeFloat(cb == null ? 0 : cb.getUpperRightY());
+        
+        // Styles are numbered per page so that every page can be read on
+        // its own.
+        HashMap<String, Integer> styleIds = new HashMap<String, Integer>();
+        List<Text> styles = new ArrayList<Text>();
+        int[] styleIndexes = new int[n];
+        for (int i=0; i<n; i++) {
+            Text t = texts.get(i);
+            String key = t.getBaseFontName() + '\0' + t.getFontFamily() 
+                       + '\0' + t.getFontFace() + '\0' + t.getStrokeRgb()
+                       + '\0' + t.getForegroundRgb();
+            Integer id = styleIds.get(key);
+            if (id == null) {
+                id = styles.size();
+                styleIds.put(key, id);
+                styles.add(t);
+            }
+            styleIndexes[i] = id;
+        }
+        
+        body.writeInt(styles.size());
+        for (Text t : styles) {
+            writeString(body, t.getBaseFontName());
+            writeString(body, t.getFontFamily());
+            writeString(body, t.getFontFace());
+            body.writeInt(t.getStrokeRgb());
+            body.writeInt(t.getForegroundRgb());
+        }
+        
+        body.writeInt(n);
+        for (Text t : texts) {
+            body.writeFloat(t.getTop());
+        }
+        for (Text t : texts) {
+            body.writeFloat(t.getX());
+        }
+        for (Text t : texts) {
+            body.writeFloat(t.getWidth());
+        }
+        for (Text t : texts) {
+            body.writeFloat(t.getHeight());
+        }
+        for (Text t : texts) {
+            body.writeFloat(t.getBaseline());
+        }
+        for (Text t : texts) {
+            body.writeFloat(t.getPointSize());
+        }
+        for (int i=0; i<n; i++) {
+            body.writeInt(styleIndexes[i]);
+        }
+        for (Text t : texts) {
+            writeString(body, t.getRun());
+        }
+        
+        Segmentation segmentation = page.getSegmentation();
+        body.writeByte(segmentation == null ? 0 : 1);
+        if (segmentation != null) {
+            writeSegmentation(body, segmentation);
+        }
+        
+        final int[] blocks = page.getBlocks();
+        body.writeByte(blocks == null ? 0 : 1);
+        if (blocks != null) {
+            for (int i=0; i<n; i++) {
+                body.writeInt(blocks[i]);
+            }
+        }
+        
+        body.flush();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.flush();
+        
+        if (stats != null) {
+            stats.addTime(ExtractionStats.Stage.SERIALIZE,
+                          System.nanoTime() - start);
+            stats.add(ExtractionStats.Counter.BYTES_WRITTEN, 
+                      4 + bytes.size());
+        }
+    }
+    
+    @Override
+    public void pageExtracted(PageView page) throws IOException {
+        writePage(page);
+    }
+    
+    @Override
+    public void writeEnd() throws IOException {
+        out.flush();
+    }
+    
+    private static void writeSegmentation(DataOutputStream out, 
+                                          Segmentation segmentation) 
+            throws IOException {
+        final int lineCount = segmentation.getLineCount();
+        out.writeInt(lineCount);
+        for (int line=0; line<lineCount; line++) {
+            out.writeInt(segmentation.getLineSize(line));
+        }
+        for (int line=0; line<lineCount; line++) {
+            for (int i=0; i<segmentation.getLineSize(line); i++) {
+                out.writeInt(segmentation.getLineRun(line, i));
+            }
+        }
+        
+        for (int run=0; run<segmentation.getRunCount(); run++) {
+            out.writeInt(segmentation.getRunWordEnd(run) 
+                         - segmentation.getRunWordStart(run));
+        }
+        final int words = segmentation.getWordCount();
+        for (int w=0; w<words; w++) {
+            out.writeInt(segmentation.getWordBegin(w));
+        }
+        for (int w=0; w<words; w++) {
+            out.writeInt(segmentation.getWordEnd(w));
+        }
+        for (int w=0; w<words; w++) {
+            out.writeFloat(segmentation.getWordLeft(w));
+        }
+        for (int w=0; w<words; w++) {
+            out.writeFloat(segmentation.getWordWidth(w));
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String s) 
+            throws IOException {
+        byte[] utf8 = s.getBytes("UTF-8");
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.crossref.pdf2xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * A PageCache that stores pages on disk in the binary output format, in
+ * a ResultCache so that it is bounded in size in the same way.
+ */
+public class DirectoryPageCache implements PageCache {
+    
+    private ResultCache cache;
+    
+    public DirectoryPageCache(ResultCache newCache) {
+        cache = newCache;
+    }
+    
+    @Override
+    public Page get(String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (!cache.copyTo(key, bytes)) {
+            return null;
+        }
+        return new BinaryPageReader(ByteBuffer.wrap(bytes.toByteArray()))
+                .next();
+    }
+    
+    @Override
+    public void put(String key, PageView page) throws IOException {
+        ResultCache.Entry entry = cache.newEntry(key);
+        try {
+            BinaryPageWriter out = 
+                new BinaryPageWriter(entry.getOutputStream());
+            out.writeStart();
+            out.writePage(page);
+            out.writeEnd();
+            entry.commit();
+        } finally {
+            entry.abort();
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Extracts whole documents with one set of options. An instance holds no
+ * per-document state, so several threads can share one to extract
+ * different documents at the same time.
+ */
+public class DocumentExtractor implements Cloneable {
+    
+    private DocumentLoader loader;
+    
+    private int threads = 1;
+    
+    private boolean coalesceOnline = false;
+    
+    private boolean fontspecs = false;
+    
+    private float baselineTolerance = 0;
+    
+    private boolean compactPages = false;
+    
+    private boolean binary = false;
+    
+    private boolean words = false;
+    
+    private boolean readingOrder = false;
+    
+    private boolean deduplicateFirst = false;
+    
+    private PageRange pageRange = null;
+    
+    private ResultCache cache = null;
+    
+    private PageCache pageCache = null;
+    
+    public DocumentExtractor(DocumentLoader newLoader) {
+        loader = newLoader;
+    }
+    
+    /**
+     * Extract the pages of each document concurrently on this many
+     * threads. Defaults to one, extracting pages in order on the calling
+     * thread.
+     */
+    public void setThreads(int newThreads) {
+        threads = newThreads;
+    }
+    
+    /**
+     * @see TextExtractor#setCoalesceOnline(boolean)
+     */
+    public void setCoalesceOnline(boolean newCoalesceOnline) {
+        coalesceOnline = newCoalesceOnline;
+    }
+    
+    /**
+     * @see TextExtractor#setBaselineTolerance(float)
+     */
+    public void setBaselineTolerance(float tolerance) {
+        baselineTolerance = tolerance;
+    }
+    
+    /**
+     * @see TextExtractor#setCompactPages(boolean)
+     */
+    public void setCompactPages(boolean newCompactPages) {
+        compactPages = newCompactPages;
+    }
+    
+    /**
+     * @see TextExtractor#setWords(boolean)
+     */
+    public void setWords(boolean newWords) {
+        words = newWords;
+    }
+    
+    /**
+     * @see TextExtractor#setReadingOrder(boolean)
+     */
+    public void setReadingOrder(boolean newReadingOrder) {
+        readingOrder = newReadingOrder;
+    }
+    
+    /**
+     * @see TextExtractor#setDeduplicateFirst(boolean)
+     */
+    public void setDeduplicateFirst(boolean newDeduplicateFirst) {
+        deduplicateFirst = newDeduplicateFirst;
+    }
+    
+    /**
+     * @see XmlPageWriter#setFontspecs(boolean)
+     */
+    public void setFontspecs(boolean newFontspecs) {
+        fontspecs = newFontspecs;
+    }
+    
+    /**
+     * Extract only the pages in range, or every page if range is null,
+     * the default. The content of other pages is never read.
+     */
+    public void setPageRange(PageRange range) {
+        pageRange = range;
+    }
+    
+    /**
+     * @return Answers the numbers of the pages to extract from a document
+     * with pageCount pages, in ascending order.
+     */
+    int[] selectPages(int pageCount) {
+        if (pageRange == null) {
+            return PageRange.all(pageCount);
+        }
+        return pageRange.select(pageCount);
+    }
+    
+    /**
+     * Look up output in cache before extracting a document to a stream,
+     * and store it there afterwards. Null, the default, turns caching
+     * off.
+     *
+     * Extractors that decrypt with a password don't use the cache. Their
+     * output would otherwise be stored under the same key as that of an
+     * extractor without one, and handed to anyone who sent the same
+     * encrypted document without its password.
+     */
+    public void setResultCache(ResultCache newCache) {
+        cache = newCache;
+    }
+    
+    /**
+     * @see TextExtractor#setPageCache(PageCache)
+     */
+    public void setPageCache(PageCache newPageCache) {
+        pageCache = newPageCache;
+    }
+    
+    /**
+     * @return Answers a string that differs between any two extractors
+     * whose output for the same document could differ.
+     */
+    String getOptionsKey() {
+        return "v1"
+             + " coalesceOnline=" + coalesceOnline
+             + " baselineTolerance=" + baselineTolerance
+             + " fontspecs=" + fontspecs
+             + " binary=" + binary
+             + " words=" + words
+             + " readingOrder=" + readingOrder
+             + " deduplicateFirst=" + deduplicateFirst
+             + " pages=" + pageRange;
+    }
+    
+    /**
+     * Write pages in the format read by BinaryPageReader rather than as
+     * XML.
+     */
+    public void setBinary(boolean newBinary) {
+        binary = newBinary;
+    }
+    
+    public boolean isBinary() {
+        return binary;
+    }
+    
+    /**
+     * @return Answers a PageWriter for os set up with this extractor's
+     * output options.
+     */
+    public PageWriter newPageWriter(OutputStream os) throws IOException {
+        if (binary) {
+            return new BinaryPageWriter(os);
+        }
+        XmlPageWriter out = new XmlPageWriter(os);
+        out.setFontspecs(fontspecs);
+        return out;
+    }
+    
+    /**
+     * Load f, adding the time taken to stats if it isn't null.
+     */
+    PDDocument load(File f, ExtractionStats stats) throws IOException {
+        final long start = System.nanoTime();
+        PDDocument doc = loader.load(f);
+        if (stats != null) {
+            stats.addTime(ExtractionStats.Stage.LOAD, System.nanoTime() - start);
+        }
+        return doc;
+    }
+    
+    /**
+     * Load another copy of f, for a worker thread, with its stream contents
+     * kept in a scratch file rather than in memory. The time taken is added
+     * to stats if it isn't null.
+     */
+    PDDocument loadCopy(File f, ExtractionStats stats) throws IOException {
+        final long start = System.nanoTime();
+        PDDocument doc = loader.loadWithScratchFile(f);
+        if (stats != null) {
+            stats.addTime(ExtractionStats.Stage.LOAD, System.nanoTime() - start);
+        }
+        return doc;
+    }
+    
+    /**
+     * @return Answers a TextExtractor set up with this extractor's options
+     * that hands pages only to its listeners.
+     */
+    TextExtractor newTextExtractor(ExtractionStats stats) throws IOException {
+        TextExtractor te = new TextExtractor();
+        te.setRetainPages(false);
+        te.setCoalesceOnline(coalesceOnline);
+        te.setBaselineTolerance(baselineTolerance);
+        te.setCompactPages(compactPages);
+        te.setWords(words);
+        te.setReadingOrder(readingOrder);
+        te.setDeduplicateFirst(deduplicateFirst);
+        te.setStats(stats);
+        te.setPageCache(pageCache);
+        return te;
+    }
+    
+    /**
+     * @return Answers an extractor with the same options as this one that
+     * decrypts documents with password.
+     */
+    public DocumentExtractor withPassword(String password) {
+        try {
+            DocumentExtractor copy = (DocumentExtractor) clone();
+            copy.loader = loader.withPassword(password);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * Extract the pages of f, handing each one to listener in page order.
+     */
+    public void extract(File f, PageListener listener) throws IOException {
+        extract(f, listener, null);
+    }
+    
+    /**
+     * Extract the pages of f, handing each one to listener in page order
+     * and recording timings and counts into stats if it isn't null.
+     */
+    public void extract(File f, PageListener listener, ExtractionStats stats)
+            throws IOException {
+        final long start = System.nanoTime();
+        
+        if (threads > 1) {
+            new ParallelExtractor(this, threads).extract(f, listener, stats);
+        } else {
+            PDDocument doc = load(f, stats);
+            
+            try {
+                TextExtractor te = newTextExtractor(stats);
+                te.addPageListener(listener);
+                
+                // Pages keep their position in the document as their
+                // number, whichever of them are selected.
+                List<PDPage> pages = DocumentLoader.getPages(doc);
+                for (int pageNumber : selectPages(pages.size())) {
+                    te.processPage(pages.get(pageNumber - 1), pageNumber);
+                }
+            } finally {
+                doc.close();
+            }
+        }
+        
+        if (stats != null) {
+            stats.setElapsed(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Extract f and write it to os as pdf2xml XML, or in binary if
+     * setBinary() has been called.
+     */
+    public void extract(File f, OutputStream os) throws IOException {
+        extract(f, os, null);
+    }
+    
+    /**
+     * Extract f and write it to os, recording timings and counts into
+     * stats if it isn't null. If there is a result cache and it holds
+     * the output for f, that is written instead and PDFBox is never
+     * involved.
+     */
+    public void extract(File f, OutputStream os, ExtractionStats stats) 
+            throws IOException {
+        if (cache == null || loader.hasPassword()) {
+            write(f, os, stats);
+            return;
+        }
+        
+        final long start = System.nanoTime();
+        final String key = ResultCache.keyFor(f, getOptionsKey());
+        if (cache.copyTo(key, os)) {
+            if (stats != null) {
+                stats.add(ExtractionStats.Counter.CACHE_HITS, 1);
+                stats.setElapsed(System.nanoTime() - start);
+            }
+            return;
+        }
+        
+        ResultCache.Entry entry = cache.newEntry(key);
+        try {
+            write(f, new TeeOutputStream(os, entry.getOutputStream()), stats);
+            entry.commit();
+        } finally {
+            entry.abort();
+        }
+    }
+    
+    private void write(File f, OutputStream os, ExtractionStats stats)
+            throws IOException {
+        PageWriter out = newPageWriter(os);
+        out.setStats(stats);
+        out.writeStart();
+        extract(f, out, stats);
+        out.writeEnd();
+    }
+
+}
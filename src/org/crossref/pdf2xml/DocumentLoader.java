@@ -0,0 +1,142 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.exceptions.CryptographyException;
+import org.apache.pdfbox.exceptions.InvalidPasswordException;
+import org.apache.pdfbox.exceptions.WrappedIOException;
+import org.apache.pdfbox.io.RandomAccessFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageNode;
+
+/**
+ * Opens PDF documents, decrypting them if need be, and lists their pages.
+ */
+public class DocumentLoader {
+    
+    private String password;
+    
+    private long memoryCeiling = 0;
+    
+    private File scratchDir = null;
+    
+    public DocumentLoader() {
+        this("");
+    }
+    
+    public DocumentLoader(String newPassword) {
+        password = newPassword;
+    }
+    
+    /**
+     * Documents larger than ceiling bytes are read through a memory
+     * mapping, with their stream contents kept in a scratch file rather
+     * than on the heap. Zero, the default, loads every document into
+     * memory.
+     */
+    public void setMemoryCeiling(long ceiling) {
+        memoryCeiling = ceiling;
+    }
+    
+    /**
+     * Create scratch files in dir rather than the default temporary
+     * directory.
+     */
+    public void setScratchDir(File dir) {
+        scratchDir = dir;
+    }
+    
+    /**
+     * @return Answers whether this loader decrypts documents with a
+     * password other than the empty one, which anyone can use.
+     */
+    public boolean hasPassword() {
+        return password != null && password.length() > 0;
+    }
+    
+    /**
+     * @return Answers a loader with the same settings as this one that
+     * decrypts documents with newPassword.
+     */
+    public DocumentLoader withPassword(String newPassword) {
+        DocumentLoader copy = new DocumentLoader(newPassword);
+        copy.memoryCeiling = memoryCeiling;
+        copy.scratchDir = scratchDir;
+        return copy;
+    }
+    
+    public PDDocument load(File f) throws IOException {
+        if (memoryCeiling > 0 && f.length() > memoryCeiling) {
+            return decrypt(loadMapped(f));
+        }
+        return decrypt(PDDocument.load(f));
+    }
+    
+    /**
+     * Load f through a memory mapping, with its stream contents kept in a
+     * scratch file, whatever its size.
+     */
+    public PDDocument loadWithScratchFile(File f) throws IOException {
+        return decrypt(loadMapped(f));
+    }
+    
+    private PDDocument loadMapped(File f) throws IOException {
+        File scratch = File.createTempFile("pdf2xml", ".scratch", scratchDir);
+        RandomAccessFile scratchFile = new RandomAccessFile(scratch, "rw");
+        // The document closes the scratch file when it is closed. Where
+        // the platform allows it, unlink the file now so that it goes
+        // away then, or when we exit, whatever happens.
+        if (!scratch.delete()) {
+            scratch.deleteOnExit();
+        }
+        
+        InputStream in = new MappedFileInputStream(f);
+        try {
+            return PDDocument.load(in, scratchFile);
+        } catch (IOException e) {
+            scratchFile.close();
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+    
+    private PDDocument decrypt(PDDocument doc) throws IOException {
+        if (doc.isEncrypted()) {
+            // Some documents are encrypted with the empty password. Try
+            // to decrypt with this password, or the one passed in on the
+            // command line (if any), and fail if we can't.
+            try {
+                doc.decrypt(password); // Defaults to the empty string.
+            } catch (CryptographyException e) {
+                doc.close();
+                throw new WrappedIOException("Can't decrypt document: ", e);
+            } catch (InvalidPasswordException e) {
+                doc.close();
+                throw new WrappedIOException("Document is encrypted: ", e);
+            }
+        }
+        return doc;
+    }
+    
+    /**
+     * @return Answers the pages of doc in document order.
+     */
+    public static List<PDPage> getPages(PDDocument doc) {
+        PDPageNode root = doc.getDocumentCatalog().getPages();
+        List<Object> kids = new ArrayList<Object>();
+        root.getAllKids(kids);
+        
+        List<PDPage> pages = new ArrayList<PDPage>(kids.size());
+        for (Object kid : kids) {
+            pages.add((PDPage) kid);
+        }
+        return pages;
+    }
+
+}
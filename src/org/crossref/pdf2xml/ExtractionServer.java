@@ -0,0 +1,367 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running local HTTP service. POST a PDF as the request body and
+ * the pdf2xml XML, or binary output if the extractor is set up for it,
+ * comes back in the response, streamed a page at a time, or copied from
+ * the extractor's result cache if it has one.
+ * An optional decryption password can be given in the X-PDF-Password
+ * header; documents extracted with one are never cached.
+ *
+ * At most maxConcurrent documents are extracted at once and at most
+ * queueSize more wait for their turn; any further requests are turned
+ * away with 503. A request body larger than maxBodyBytes is turned away
+ * with 413, before it is read if the client gives its length.
+ *
+ * Each document is extracted on a worker thread while the thread that
+ * took the request waits for it. A request that hasn't finished within
+ * its timeout is answered with 504, or cut short if output has already
+ * gone out, and its worker is interrupted. The worker keeps its place
+ * among the maxConcurrent until it does stop, so a document that hangs
+ * can't let more than maxConcurrent run at once.
+ */
+public class ExtractionServer {
+
+    public static final String PASSWORD_HEADER = "X-PDF-Password";
+
+    private static final String XML_CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+    private static final String BINARY_CONTENT_TYPE = 
+        "application/octet-stream";
+
+    private DocumentExtractor extractor;
+
+    private int port;
+
+    private long timeoutMillis;
+
+    private long maxBodyBytes;
+
+    private Semaphore admitted;
+
+    private Semaphore running;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private ExecutorService workers;
+
+    public ExtractionServer(DocumentExtractor newExtractor, int newPort,
+                            int maxConcurrent, int queueSize,
+                            long newTimeoutMillis, long newMaxBodyBytes) {
+        extractor = newExtractor;
+        port = newPort;
+        timeoutMillis = newTimeoutMillis;
+        maxBodyBytes = newMaxBodyBytes;
+        admitted = new Semaphore(maxConcurrent + queueSize);
+        running = new Semaphore(maxConcurrent, true);
+    }
+
+    public void start() throws IOException {
+        InetAddress local = InetAddress.getByName("127.0.0.1");
+        server = HttpServer.create(new InetSocketAddress(local, port), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleExtract(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // Requests beyond the admission limit are answered straight away,
+        // so the number of busy threads is bounded by the semaphores.
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        // Bounded by the running semaphore in the same way.
+        workers = Executors.newCachedThreadPool();
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void handleExtract(HttpExchange exchange) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        if (!exchange.getRequestMethod().equals("POST")) {
+            sendError(exchange, 405, "POST a PDF document.");
+            return;
+        }
+
+        if (getContentLength(exchange) > maxBodyBytes) {
+            sendTooLarge(exchange);
+            return;
+        }
+
+        if (!admitted.tryAcquire()) {
+            sendError(exchange, 503, "Too many requests queued.");
+            return;
+        }
+
+        File pdf = null;
+        Future<Void> result = null;
+        ResponseStream response = null;
+        try {
+            pdf = File.createTempFile("pdf2xml", ".pdf");
+            if (!spool(exchange.getRequestBody(), pdf, maxBodyBytes)) {
+                sendTooLarge(exchange);
+                return;
+            }
+
+            // Only wait for a worker as long as the request has left, and
+            // don't start one for a request whose time is already up.
+            final long left = deadline - System.currentTimeMillis();
+            if (left <= 0
+                    || !running.tryAcquire(left, TimeUnit.MILLISECONDS)) {
+                sendError(exchange, 503, "Timed out waiting to be processed.");
+                return;
+            }
+
+            String password = exchange.getRequestHeaders()
+                                      .getFirst(PASSWORD_HEADER);
+            DocumentExtractor de = password == null
+                                 ? extractor
+                                 : extractor.withPassword(password);
+            response = new ResponseStream(exchange,
+                                          de.isBinary()
+                                          ? BINARY_CONTENT_TYPE
+                                          : XML_CONTENT_TYPE);
+            try {
+                result = workers.submit(new Extraction(de, pdf, response));
+            } catch (RejectedExecutionException e) {
+                running.release();
+                throw new InterruptedException();
+            }
+            // The extraction deletes the document when it is done with it.
+            pdf = null;
+
+            await(exchange, result, response, deadline);
+        } catch (InterruptedException e) {
+            if (result != null) {
+                result.cancel(true);
+            }
+            // As in await(), a response already under way can only be cut
+            // short.
+            if (response == null || !response.abandon()) {
+                sendError(exchange, 503, "Server is shutting down.");
+            }
+        } finally {
+            if (pdf != null) {
+                pdf.delete();
+            }
+            admitted.release();
+        }
+    }
+
+    /**
+     * Wait until deadline for an extraction writing to response, and
+     * answer with an error if it fails or takes too long.
+     */
+    private void await(HttpExchange exchange, Future<Void> result,
+                       ResponseStream response, long deadline)
+            throws IOException, InterruptedException {
+        try {
+            final long wait = deadline - System.currentTimeMillis();
+            result.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            if (!response.abandon()) {
+                sendError(exchange, 504, "Timed out extracting document.");
+            }
+        } catch (ExecutionException e) {
+            // Once the first page has gone out there is no way to report
+            // an error other than cutting the response short.
+            if (response.abandon()) {
+                return;
+            }
+            if (e.getCause() instanceof IOException) {
+                sendError(exchange, 400, 
+                          "Couldn't read document: " + e.getCause());
+            } else {
+                sendError(exchange, 500, 
+                          "Couldn't extract document: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return Answers the length of the request body, as the client gives
+     * it, or -1 if it doesn't.
+     */
+    private static long getContentLength(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copy in to f, up to limit bytes.
+     *
+     * @return Answers false if in holds more than limit bytes, in which
+     * case f holds only the first of them.
+     */
+    private static boolean spool(InputStream in, File f, long limit) 
+            throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                if (total > limit) {
+                    return false;
+                }
+                out.write(buffer, 0, n);
+            }
+            return true;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void sendTooLarge(HttpExchange exchange) throws IOException {
+        sendError(exchange, 413, "Documents may be at most " + maxBodyBytes
+                                 + " bytes.");
+    }
+
+    private static void sendError(HttpExchange exchange, int status,
+                                  String message) throws IOException {
+        byte[] body = (message + "\n").getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Extracts a document to a response on a worker thread, deleting the
+     * document and giving up its place among those running once done.
+     */
+    private class Extraction implements Callable<Void> {
+        private DocumentExtractor de;
+        private File pdf;
+        private ResponseStream response;
+
+        Extraction(DocumentExtractor newDe, File newPdf,
+                   ResponseStream newResponse) {
+            de = newDe;
+            pdf = newPdf;
+            response = newResponse;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            try {
+                de.extract(pdf, response);
+                response.close();
+                return null;
+            } finally {
+                pdf.delete();
+                running.release();
+            }
+        }
+    }
+
+    /**
+     * Sends the 200 response headers only when the first byte of output is
+     * written, so that a document that fails early can still be answered
+     * with an error status. Once abandoned, any further output fails, so
+     * that an extraction that has been given up on can't write to the
+     * exchange after it has been answered.
+     */
+    private static class ResponseStream extends OutputStream {
+        private HttpExchange exchange;
+        private String contentType;
+        private OutputStream body;
+        private boolean abandoned = false;
+
+        ResponseStream(HttpExchange newExchange, String newContentType) {
+            exchange = newExchange;
+            contentType = newContentType;
+        }
+
+        /**
+         * Refuse any further output.
+         *
+         * @return Answers whether output had already begun, in which case
+         * the response can't be given an error status.
+         */
+        synchronized boolean abandon() {
+            abandoned = true;
+            return body != null;
+        }
+
+        private OutputStream commit() throws IOException {
+            if (abandoned) {
+                throw new InterruptedIOException("Response abandoned.");
+            }
+            if (body == null) {
+                exchange.getResponseHeaders().set("Content-Type",
+                                                  contentType);
+                // A length of zero means the body is sent chunked.
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            commit().write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+                throws IOException {
+            commit().write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (body != null && !abandoned) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            commit().close();
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package org.crossref.pdf2xml;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counts for the extraction of one document. Stage times are
+ * summed over every thread that worked on the document, so with parallel
+ * extraction they can add up to more than the elapsed time.
+ *
+ * Safe to update from several threads at once.
+ */
+public class ExtractionStats {
+
+    public enum Stage {
+        LOAD, PROCESS, COALESCE, DEDUPLICATE, ORDER, SEGMENT, SERIALIZE;
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Counter {
+        /** Pages extracted. */
+        PAGES,
+        /** Glyphs read from content streams, before coalescing. */
+        GLYPHS,
+        /** Text objects allocated for those glyphs. */
+        TEXT_ALLOCATIONS,
+        /** Runs dropped as duplicates of others. */
+        DUPLICATES_REMOVED,
+        /** Glyphs and runs merged into the run before them, as they were
+         * read or when rows were coalesced. */
+        COALESCED_RUNS,
+        /** Runs left after duplicate removal and coalescing, and any
+         * splitting for reading order; those that are output. */
+        RUNS,
+        /** Layout blocks found, when putting runs in reading order. */
+        BLOCKS,
+        /** Words the runs were split into, when segmenting. */
+        WORDS,
+        /** Bytes of output written, from the document's header to its
+         * footer. Output copied from a ResultCache is not counted. */
+        BYTES_WRITTEN,
+        /** Documents whose output came from a ResultCache. */
+        CACHE_HITS,
+        /** Pages that came from a PageCache rather than being extracted. */
+        PAGE_CACHE_HITS;
+
+        String key() {
+            StringBuilder s = new StringBuilder();
+            boolean upper = false;
+            for (char c : name().toLowerCase().toCharArray()) {
+                if (c == '_') {
+                    upper = true;
+                } else {
+                    s.append(upper ? Character.toUpperCase(c) : c);
+                    upper = false;
+                }
+            }
+            return s.toString();
+        }
+    }
+
+    private AtomicLongArray stageNanos =
+        new AtomicLongArray(Stage.values().length);
+
+    private AtomicLongArray counts =
+        new AtomicLongArray(Counter.values().length);
+
+    private AtomicLong elapsedNanos = new AtomicLong();
+
+    public void addTime(Stage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    /**
+     * @return Answers the time spent in stage, in nanoseconds.
+     */
+    public long getTime(Stage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    public void add(Counter counter, long n) {
+        counts.addAndGet(counter.ordinal(), n);
+    }
+
+    public long get(Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+
+    public void setElapsed(long nanos) {
+        elapsedNanos.set(nanos);
+    }
+
+    /**
+     * @return Answers the wall-clock time taken by the whole document, in
+     * nanoseconds.
+     */
+    public long getElapsed() {
+        return elapsedNanos.get();
+    }
+
+    private static String millis(long nanos) {
+        // Always with a '.', whatever the locale, so the JSON stays valid.
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * @return Answers the stats as a JSON object, with times in
+     * milliseconds.
+     */
+    public String toJson(String document) {
+        StringBuilder s = new StringBuilder();
+        s.append("{\"document\":").append(jsonString(document));
+        s.append(",\"elapsedMs\":").append(millis(getElapsed()));
+        s.append(",\"stageMs\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                s.append(',');
+            }
+            s.append('"').append(stage.key()).append("\":");
+            s.append(millis(getTime(stage)));
+        }
+        s.append('}');
+        for (Counter counter : Counter.values()) {
+            s.append(",\"").append(counter.key()).append("\":");
+            s.append(get(counter));
+        }
+        s.append('}');
+        return s.toString();
+    }
+
+    /**
+     * @return Answers the stats as a single line of key=value pairs, with
+     * times in milliseconds.
+     */
+    public String toMetricsLine(String document) {
+        StringBuilder s = new StringBuilder();
+        s.append("document=").append(document.replace(' ', '_'));
+        s.append(" elapsedMs=").append(millis(getElapsed()));
+        for (Stage stage : Stage.values()) {
+            s.append(' ').append(stage.key()).append("Ms=");
+            s.append(millis(getTime(stage)));
+        }
+        for (Counter counter : Counter.values()) {
+            s.append(' ').append(counter.key()).append('=');
+            s.append(get(counter));
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return Answers whether format is one that format() understands:
+     * "json" or "line".
+     */
+    public static boolean isFormat(String format) {
+        return format.equals("json") || format.equals("line");
+    }
+
+    /**
+     * @return Answers the stats as JSON if format is "json", or as a
+     * metrics line if it is "line".
+     */
+    public String format(String format, String document) {
+        if (format.equals("json")) {
+            return toJson(document);
+        } else if (format.equals("line")) {
+            return toMetricsLine(document);
+        }
+        throw new IllegalArgumentException("Unknown stats format '"
+                                           + format + "'.");
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder s = new StringBuilder("\"");
+        for (int i=0; i<value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < 0x20) {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        return s.append('"').toString();
+    }
+
+}
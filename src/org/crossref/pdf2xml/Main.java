@@ -8,14 +8,7 @@ import java.util.List;
 
 import javax.imageio.ImageIO;
 
-import org.apache.pdfbox.exceptions.CryptographyException;
-import org.apache.pdfbox.exceptions.InvalidPasswordException;
-import org.apache.pdfbox.exceptions.WrappedIOException;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageNode;
-import org.apache.pdfbox.util.PDFTextStripper;
+import org.crossref.pdf2xml.data.PageView;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -31,63 +24,280 @@ public class Main {
             required=false, multiValued=false, metaVar="PAGENO")
     private int maskImagePage = 0;
     
+    @Option(name="--memory-ceiling", usage="Read documents larger than "
+            + "this many megabytes through a memory mapping, keeping their "
+            + "streams in a scratch file rather than in memory.",
+            required=false, multiValued=false, metaVar="MB")
+    private long memoryCeiling = 0;
+    
+    @Option(name="--scratch-dir", usage="Directory to create scratch "
+            + "files in.",
+            required=false, multiValued=false, metaVar="DIR")
+    private String scratchDir = null;
+    
+    @Option(name="--pages", usage="Extract only these pages, as a list "
+            + "such as 1-2,7,10- where -5 means the last five pages.",
+            required=false, multiValued=false, metaVar="RANGES")
+    private String pages = null;
+    
+    @Option(name="--threads", usage="Extract the pages of each document "
+            + "concurrently on this many threads, each with its own copy of "
+            + "the document. Ignored in batch and server modes when --jobs "
+            + "is more than one.",
+            required=false, multiValued=false, metaVar="N")
+    private int threads = 1;
+    
+    @Option(name="--coalesce-online", usage="Merge each glyph into the "
+            + "run before it as it is read, rather than in a separate pass "
+            + "over the finished page.",
+            required=false, multiValued=false)
+    private boolean coalesceOnline = false;
+    
+    @Option(name="--baseline-tolerance", usage="Treat text whose "
+            + "baselines are within this many points as being on the same "
+            + "line when merging runs and removing duplicates.",
+            required=false, multiValued=false, metaVar="PT")
+    private float baselineTolerance = 0;
+    
+    @Option(name="--words", usage="Group runs into lines and split them "
+            + "into words, written as line and word elements.",
+            required=false, multiValued=false)
+    private boolean words = false;
+    
+    @Option(name="--reading-order", usage="Detect columns and blocks of "
+            + "text, and write runs in reading order with the block each "
+            + "belongs to.",
+            required=false, multiValued=false)
+    private boolean readingOrder = false;
+    
+    @Option(name="--dedup-first", usage="Remove duplicate glyphs before "
+            + "merging them into runs, so that a line drawn twice in the "
+            + "same style is removed rather than doubled.",
+            required=false, multiValued=false)
+    private boolean deduplicateFirst = false;
+    
+    @Option(name="--fontspecs", usage="Write each distinct text style once "
+            + "as a fontspec, and refer to it from text elements.",
+            required=false, multiValued=false)
+    private boolean fontspecs = false;
+    
+    @Option(name="--binary", usage="Write pages in a compact binary "
+            + "format rather than as XML.",
+            required=false, multiValued=false)
+    private boolean binary = false;
+    
+    @Option(name="--cache", usage="Keep output in this directory, keyed "
+            + "by a hash of each document and the options, and reuse it "
+            + "when the same document is seen again.",
+            required=false, multiValued=false, metaVar="DIR")
+    private String cacheDir = null;
+    
+    @Option(name="--cache-size", usage="Megabytes of output to keep in "
+            + "the cache before discarding the least recently used.",
+            required=false, multiValued=false, metaVar="MB")
+    private long cacheSize = 1024;
+    
+    @Option(name="--page-cache", usage="Keep extracted pages in this "
+            + "directory, keyed by a hash of their content, and reuse them "
+            + "when the same page is seen again.",
+            required=false, multiValued=false, metaVar="DIR")
+    private String pageCacheDir = null;
+    
+    @Option(name="--page-cache-size", usage="Megabytes of pages to keep "
+            + "in the page cache.",
+            required=false, multiValued=false, metaVar="MB")
+    private long pageCacheSize = 1024;
+    
+    @Option(name="--memory-page-cache", usage="Keep this many extracted "
+            + "pages in memory, keyed by a hash of their content, and reuse "
+            + "them when the same page is seen again.",
+            required=false, multiValued=false, metaVar="N")
+    private int memoryPageCache = 0;
+    
+    @Option(name="--compact-pages", usage="Hold extracted pages in a "
+            + "compact form, which saves memory when many are kept.",
+            required=false, multiValued=false)
+    private boolean compactPages = false;
+    
+    @Option(name="--stats", usage="Print timings and counts for each "
+            + "document to stderr, as 'json' or as a metrics 'line'.",
+            required=false, multiValued=false, metaVar="FORMAT")
+    private String statsFormat = null;
+    
+    @Option(name="--batch", usage="Treat each argument as a directory of "
+            + "PDFs, or a manifest file listing one PDF per line, and write "
+            + "an output file for each PDF.",
+            required=false, multiValued=false)
+    private boolean batch = false;
+    
+    @Option(name="-o", usage="Directory to write batch output to.",
+            required=false, multiValued=false, metaVar="DIR")
+    private String outputDir = ".";
+    
+    @Option(name="--jobs", usage="Number of documents to extract at once "
+            + "in batch or server mode.",
+            required=false, multiValued=false, metaVar="N")
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    
+    @Option(name="--serve", usage="Run as an HTTP service on this local "
+            + "port. POST a PDF to it to get back its XML.",
+            required=false, multiValued=false, metaVar="PORT")
+    private int servePort = 0;
+    
+    @Option(name="--queue", usage="Number of requests the server will "
+            + "queue beyond those it is extracting.",
+            required=false, multiValued=false, metaVar="N")
+    private int queueSize = 16;
+    
+    @Option(name="--timeout", usage="Seconds the server allows for each "
+            + "request.",
+            required=false, multiValued=false, metaVar="SECS")
+    private int timeout = 60;
+    
+    @Option(name="--max-body", usage="Megabytes the server accepts in a "
+            + "request body.",
+            required=false, multiValued=false, metaVar="MB")
+    private int maxBody = 100;
+    
     @Argument
     private List<String> filenames = new ArrayList<String>();
+    
+    private PageView maskPage = null;
 	
-	private TextExtractor parsePdf(File f) throws IOException {
-		PDDocument doc = PDDocument.load(f);
-		
-		if(doc.isEncrypted()) {
-            // Some documents are encrypted with the empty password. Try
-		    // to decrypt with this password, or the one passed in on the
-		    // command line (if any), and fail if we can't.
-            try {
-                doc.decrypt(password); // Defaults to the empty string.
-            } catch (CryptographyException e) {
-                throw new WrappedIOException("Can't decrypt document: ", e);
-            } catch (InvalidPasswordException e) {
-                throw new WrappedIOException("Document is encrypted: ", e);
-            }
-        }
-		
-		PDDocumentCatalog docCat = doc.getDocumentCatalog();
-		
-		PDPageNode root = docCat.getPages();
-		List pages = new ArrayList();
-		root.getAllKids(pages);
-		
-		TextExtractor te = new TextExtractor();
-		
-		for (Object p : pages) {
-			PDPage page = (PDPage) p;
-			
-			te.setShouldSeparateByBeads(false);
-			te.processStream(page, 
-							 page.getResources(), 
-							 page.getContents().getStream());
-		}
-		
-		doc.close();
-		
-		return te;
+	private DocumentExtractor createExtractor() {
+	    DocumentLoader loader = new DocumentLoader(password);
+	    loader.setMemoryCeiling(memoryCeiling * 1024 * 1024);
+	    if (scratchDir != null) {
+	        loader.setScratchDir(new File(scratchDir));
+	    }
+	    
+	    DocumentExtractor extractor = new DocumentExtractor(loader);
+	    // Batch and server modes already extract several documents at
+	    // once, and page threads would multiply the copies of each held
+	    // in memory by as many again.
+	    if ((batch || servePort > 0) && jobs > 1 && threads > 1) {
+	        System.err.println("Ignoring --threads, as --jobs extracts "
+	                           + "several documents at once.");
+	    } else {
+	        extractor.setThreads(threads);
+	    }
+	    extractor.setCoalesceOnline(coalesceOnline);
+	    extractor.setBaselineTolerance(baselineTolerance);
+	    extractor.setCompactPages(compactPages);
+	    extractor.setWords(words);
+	    extractor.setReadingOrder(readingOrder);
+	    extractor.setDeduplicateFirst(deduplicateFirst);
+	    extractor.setFontspecs(fontspecs);
+	    extractor.setBinary(binary);
+	    if (pages != null) {
+	        extractor.setPageRange(PageRange.parse(pages));
+	    }
+	    try {
+	        if (cacheDir != null) {
+	            extractor.setResultCache(
+	                new ResultCache(new File(cacheDir), 
+	                                cacheSize * 1024 * 1024));
+	        }
+	        if (pageCacheDir != null) {
+	            extractor.setPageCache(new DirectoryPageCache(
+	                new ResultCache(new File(pageCacheDir),
+	                                pageCacheSize * 1024 * 1024)));
+	        } else if (memoryPageCache > 0) {
+	            extractor.setPageCache(new MemoryPageCache(memoryPageCache));
+	        }
+	    } catch (IOException e) {
+	        System.err.println(e.getMessage());
+	        System.exit(1);
+	    }
+	    return extractor;
+	}
+	
+	private void doBatch() {
+	    BatchRunner batch = new BatchRunner(createExtractor(), 
+	                                        new File(outputDir), 
+	                                        jobs, System.err);
+	    batch.setStatsFormat(statsFormat);
+	    
+	    for (String filename : filenames) {
+	        try {
+	            batch.addInput(new File(filename));
+	        } catch (IOException e) {
+	            System.err.println("Couldn't read manifest '" + filename + "'.");
+	            System.exit(1);
+	        }
+	    }
+	    
+	    try {
+	        if (batch.run() > 0) {
+	            System.exit(1);
+	        }
+	    } catch (InterruptedException e) {
+	        System.exit(1);
+	    }
+	}
+	
+	private void doServe() {
+	    ExtractionServer server = new ExtractionServer(createExtractor(),
+	                                                   servePort, jobs,
+	                                                   queueSize,
+	                                                   timeout * 1000L,
+	                                                   maxBody * 1024L * 1024);
+	    try {
+	        server.start();
+	        System.err.println("Listening on port " + servePort + ".");
+	    } catch (IOException e) {
+	        System.err.println("Couldn't listen on port " + servePort + ".");
+	        System.exit(1);
+	    }
+	}
+	
+	private void extractWithMask(DocumentExtractor extractor, File inputFile,
+	                             ExtractionStats stats) throws IOException {
+	    final PageWriter out = extractor.newPageWriter(System.out);
+	    out.setStats(stats);
+	    out.writeStart();
+	    extractor.extract(inputFile, new PageListener() {
+	        @Override
+	        public void pageExtracted(PageView page) throws IOException {
+	            out.writePage(page);
+	            // Only hang on to the page we need for the mask image.
+	            if (page.getNumber() == maskImagePage) {
+	                maskPage = page;
+	            }
+	        }
+	    }, stats);
+	    out.writeEnd();
 	}
 	
 	private void doMain() {
+	    DocumentExtractor extractor = createExtractor();
+	    
 	    for (String filename : filenames) {
             File inputFile = new File(filename);
-            TextExtractor te = null;
+            maskPage = null;
+            ExtractionStats stats = 
+                statsFormat == null ? null : new ExtractionStats();
             
             try {
-                te = parsePdf(inputFile);
-                System.out.println(te.toXml());
+                if (maskImagePage == 0) {
+                    // Nothing needs the pages themselves, so their output
+                    // may come straight from the result cache.
+                    extractor.extract(inputFile, System.out, stats);
+                } else {
+                    extractWithMask(extractor, inputFile, stats);
+                }
             } catch (IOException e) {
                 System.err.println("Couldn't read file '" + inputFile +"'.");
                 System.exit(1);
             }
             
+            if (stats != null) {
+                System.err.println(stats.format(statsFormat, filename));
+            }
+            
             try {
-                if (maskImagePage > 0) {
-                    BufferedImage maskImage = te.toMaskImage(maskImagePage);
+                if (maskPage != null) {
+                    BufferedImage maskImage = TextExtractor.toMaskImage(maskPage);
                     ImageIO.write(maskImage, "png", new File("mask.png"));
                 }
             } catch (IOException e) {
@@ -105,14 +315,28 @@ public class Main {
         try {
             parser.parseArgument(args);
             
-            if (m.filenames.size() == 0) {
+            if (m.statsFormat != null 
+                    && !ExtractionStats.isFormat(m.statsFormat)) {
+                throw new CmdLineException("Unknown --stats format '"
+                                           + m.statsFormat + "'.");
+            }
+            
+            if (m.servePort > 0) {
+                m.doServe();
+            } else if (m.filenames.size() == 0) {
                 System.err.println("Usage: pdf2xml [options] <FILEs>");
                 parser.printUsage(System.err);
+            } else if (m.batch) {
+                m.doBatch();
             } else {
                 m.doMain();
             }
         } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
             parser.printUsage(System.err);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
 	}
 
@@ -0,0 +1,100 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through a memory mapping rather than the heap. The file is
+ * mapped a window at a time, so files larger than a single mapping can
+ * hold are fine, and the operating system is free to drop pages that
+ * have already been read.
+ */
+class MappedFileInputStream extends InputStream {
+    
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    
+    private java.io.RandomAccessFile file;
+    
+    private FileChannel channel;
+    
+    private long size;
+    
+    private long windowStart = 0;
+    
+    private MappedByteBuffer window;
+    
+    MappedFileInputStream(File f) throws IOException {
+        file = new java.io.RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        size = channel.size();
+        window = map(0);
+    }
+    
+    private MappedByteBuffer map(long start) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start,
+                           Math.min(WINDOW_SIZE, size - start));
+    }
+    
+    /**
+     * @return Answers false if the whole file has been read.
+     */
+    private boolean fill() throws IOException {
+        if (!window.hasRemaining()) {
+            final long next = windowStart + window.capacity();
+            if (next >= size) {
+                return false;
+            }
+            windowStart = next;
+            window = map(next);
+        }
+        return true;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return window.get() & 0xff;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        final long position = windowStart + window.position();
+        final long skipped = Math.max(0, Math.min(n, size - position));
+        if (skipped < window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            windowStart = position + skipped;
+            window = map(windowStart);
+        }
+        return skipped;
+    }
+    
+    @Override
+    public int available() {
+        return window.remaining();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+}
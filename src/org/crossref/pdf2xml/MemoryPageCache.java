@@ -0,0 +1,56 @@
+package org.crossref.pdf2xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * A PageCache that keeps the most recently used pages in memory. They are
+ * kept in the binary output format, as DirectoryPageCache keeps them on
+ * disk, rather than as Pages. A Page refers to the fonts of the document
+ * it came from, and through them to much of that document, all of which
+ * would otherwise stay reachable for as long as the page was cached.
+ */
+public class MemoryPageCache implements PageCache {
+    
+    private Map<String, byte[]> pages;
+    
+    public MemoryPageCache(final int maxPages) {
+        pages = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> e) {
+                return size() > maxPages;
+            }
+        };
+    }
+    
+    @Override
+    public Page get(String key) throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = pages.get(key);
+        }
+        if (bytes == null) {
+            return null;
+        }
+        return new BinaryPageReader(ByteBuffer.wrap(bytes)).next();
+    }
+    
+    @Override
+    public void put(String key, PageView page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryPageWriter out = new BinaryPageWriter(bytes);
+        out.writeStart();
+        out.writePage(page);
+        out.writeEnd();
+        synchronized (this) {
+            pages.put(key, bytes.toByteArray());
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Holds extracted pages keyed by a digest of their content, so that a
+ * page seen before, in any document, need not be extracted again.
+ * Implementations must be safe to use from several threads at once.
+ */
+public interface PageCache {
+    
+    /**
+     * @return Answers the page stored under key, or null if there isn't
+     * one. The page may be shared with other callers, so it must not be
+     * changed.
+     */
+    public PageView get(String key) throws IOException;
+    
+    public void put(String key, PageView page) throws IOException;
+
+}
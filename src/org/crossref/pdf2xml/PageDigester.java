@@ -0,0 +1,212 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Hashes everything that the text extracted from a page depends on: its
+ * content stream, its resources and its crop box. Two pages with the same
+ * digest, in the same document or not, extract to the same text.
+ *
+ * Fonts and other resources are usually shared between the pages of a
+ * document through indirect objects, so the digest of each indirect
+ * object is remembered and only worked out once per document.
+ */
+class PageDigester {
+    
+    private static final COSName CONTENTS = COSName.getPDFName("Contents");
+    
+    /* Walking up to the parent would take in the whole page tree. */
+    private static final COSName PARENT = COSName.getPDFName("Parent");
+    
+    private static final Comparator<COSName> NAME_ORDER = 
+        new Comparator<COSName>() {
+            @Override
+            public int compare(COSName a, COSName b) {
+                return a.getName().compareTo(b.getName());
+            }
+        };
+    
+    private IdentityHashMap<COSBase, byte[]> digests = 
+        new IdentityHashMap<COSBase, byte[]>();
+    
+    private IdentityHashMap<COSBase, Boolean> inProgress = 
+        new IdentityHashMap<COSBase, Boolean>();
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * @return Answers the digest of page as a hex string.
+     */
+    String digest(PDPage page) throws IOException {
+        MessageDigest md = newDigest();
+        
+        PDRectangle cropBox = page.findCropBox();
+        updateFloat(md, cropBox.getLowerLeftX());
+        updateFloat(md, cropBox.getLowerLeftY());
+        updateFloat(md, cropBox.getUpperRightX());
+        updateFloat(md, cropBox.getUpperRightY());
+        updateInt(md, page.findRotation());
+        
+        update(md, page.getCOSDictionary().getItem(CONTENTS));
+        update(md, page.getResources() == null 
+                   ? null : page.getResources().getCOSDictionary());
+        
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+    
+    /**
+     * Forget the digests of indirect objects, which should be done before
+     * moving on to another document.
+     */
+    void clear() {
+        digests.clear();
+    }
+    
+    private void update(MessageDigest md, COSBase base) throws IOException {
+        if (base == null) {
+            md.update((byte) 'n');
+        } else if (base instanceof COSObject) {
+            md.update((byte) 'r');
+            md.update(digestOf(((COSObject) base).getObject()));
+        } else if (base instanceof COSStream) {
+            md.update((byte) 's');
+            updateDictionary(md, (COSDictionary) base);
+            // The raw, still encoded, bytes will do, and save decoding.
+            InputStream in = ((COSStream) base).getFilteredStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        } else if (base instanceof COSDictionary) {
+            md.update((byte) 'd');
+            updateDictionary(md, (COSDictionary) base);
+        } else if (base instanceof COSArray) {
+            COSArray array = (COSArray) base;
+            md.update((byte) 'a');
+            updateInt(md, array.size());
+            for (int i=0; i<array.size(); i++) {
+                update(md, array.get(i));
+            }
+        } else if (base instanceof COSName) {
+            md.update((byte) '/');
+            updateString(md, ((COSName) base).getName());
+        } else if (base instanceof COSString) {
+            byte[] bytes = ((COSString) base).getBytes();
+            md.update((byte) '(');
+            updateInt(md, bytes.length);
+            md.update(bytes);
+        } else if (base instanceof COSInteger) {
+            md.update((byte) 'i');
+            updateLong(md, ((COSInteger) base).longValue());
+        } else if (base instanceof COSFloat) {
+            md.update((byte) 'f');
+            updateFloat(md, ((COSFloat) base).floatValue());
+        } else if (base instanceof COSBoolean) {
+            md.update((byte) (((COSBoolean) base).getValue() ? 'T' : 'F'));
+        } else {
+            md.update((byte) 'n');
+        }
+    }
+    
+    private void updateDictionary(MessageDigest md, COSDictionary dict) 
+            throws IOException {
+        // Sorted, so that a rewritten file with its keys in a different
+        // order still matches.
+        List<COSName> keys = new ArrayList<COSName>(dict.keySet());
+        Collections.sort(keys, NAME_ORDER);
+        
+        updateInt(md, keys.size());
+        for (COSName key : keys) {
+            if (!key.equals(PARENT)) {
+                updateString(md, key.getName());
+                update(md, dict.getItem(key));
+            }
+        }
+    }
+    
+    /**
+     * @return Answers the digest of an indirect object, working it out only
+     * if it hasn't been already.
+     */
+    private byte[] digestOf(COSBase base) throws IOException {
+        byte[] digest = digests.get(base);
+        if (digest == null) {
+            if (inProgress.containsKey(base)) {
+                // A reference back to an object we are part way through.
+                return new byte[] { 'c' };
+            }
+            
+            inProgress.put(base, Boolean.TRUE);
+            try {
+                MessageDigest md = newDigest();
+                update(md, base);
+                digest = md.digest();
+            } finally {
+                inProgress.remove(base);
+            }
+            digests.put(base, digest);
+        }
+        return digest;
+    }
+    
+    private static void updateString(MessageDigest md, String s) 
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        updateInt(md, bytes.length);
+        md.update(bytes);
+    }
+    
+    private static void updateFloat(MessageDigest md, float f) {
+        updateInt(md, Float.floatToIntBits(f));
+    }
+    
+    private static void updateInt(MessageDigest md, int i) {
+        md.update((byte) (i >>> 24));
+        md.update((byte) (i >>> 16));
+        md.update((byte) (i >>> 8));
+        md.update((byte) i);
+    }
+    
+    private static void updateLong(MessageDigest md, long l) {
+        updateInt(md, (int) (l >>> 32));
+        updateInt(md, (int) l);
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Receives pages from a TextExtractor one at a time, as soon as each has
+ * been coalesced and had its duplicates removed. A listener that doesn't
+ * keep hold of a page lets it be collected before the next one is parsed.
+ */
+public interface PageListener {
+    
+    public void pageExtracted(PageView page) throws IOException;
+
+}
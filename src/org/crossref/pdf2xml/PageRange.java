@@ -0,0 +1,127 @@
+package org.crossref.pdf2xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A selection of pages, parsed from a comma-separated list of page
+ * numbers and ranges. Pages are numbered from one.
+ *
+ * <pre>
+ *   7      page 7
+ *   1-2    pages 1 and 2
+ *   10-    page 10 to the end of the document
+ *   -5     the last 5 pages
+ * </pre>
+ *
+ * The last-pages form means a selection only resolves to page numbers
+ * once the page count of a document is known.
+ */
+public class PageRange {
+    
+    /* Each part is a pair of first and last page. A first of zero or less
+     * counts back from the end of the document, and a last of
+     * Integer.MAX_VALUE runs to the end. */
+    private List<int[]> parts = new ArrayList<int[]>();
+    
+    private String spec;
+    
+    private PageRange(String newSpec) {
+        spec = newSpec;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if spec is not a valid selection.
+     */
+    public static PageRange parse(String spec) {
+        PageRange range = new PageRange(spec);
+        
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            try {
+                final int dash = part.indexOf('-');
+                if (part.length() == 0) {
+                    throw new NumberFormatException();
+                } else if (dash == 0) {
+                    final int last = Integer.parseInt(part.substring(1));
+                    if (last < 1) {
+                        throw new NumberFormatException();
+                    }
+                    range.parts.add(new int[] { 1 - last, Integer.MAX_VALUE });
+                } else if (dash == part.length() - 1) {
+                    final int first = 
+                        Integer.parseInt(part.substring(0, dash));
+                    range.add(first, Integer.MAX_VALUE);
+                } else if (dash > 0) {
+                    range.add(Integer.parseInt(part.substring(0, dash)),
+                              Integer.parseInt(part.substring(dash + 1)));
+                } else {
+                    final int page = Integer.parseInt(part);
+                    range.add(page, page);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad page range '" 
+                                                   + part + "'.");
+            }
+        }
+        
+        return range;
+    }
+    
+    private void add(int first, int last) {
+        if (first < 1 || last < first) {
+            throw new NumberFormatException();
+        }
+        parts.add(new int[] { first, last });
+    }
+    
+    /**
+     * @return Answers, in ascending order and without repeats, the
+     * numbers of the selected pages of a document with pageCount pages.
+     */
+    public int[] select(int pageCount) {
+        boolean[] selected = new boolean[pageCount + 1];
+        int n = 0;
+        
+        for (int[] part : parts) {
+            final int first = part[0] < 1 ? pageCount + part[0] : part[0];
+            final int last = Math.min(part[1], pageCount);
+            for (int page=Math.max(first, 1); page<=last; page++) {
+                if (!selected[page]) {
+                    selected[page] = true;
+                    n++;
+                }
+            }
+        }
+        
+        int[] pages = new int[n];
+        int i = 0;
+        for (int page=1; page<=pageCount; page++) {
+            if (selected[page]) {
+                pages[i++] = page;
+            }
+        }
+        return pages;
+    }
+    
+    /**
+     * @return Answers the selection as it was given to parse().
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+    
+    /**
+     * @return Answers a selection of every page of a document with
+     * pageCount pages.
+     */
+    public static int[] all(int pageCount) {
+        int[] pages = new int[pageCount];
+        for (int i=0; i<pageCount; i++) {
+            pages[i] = i + 1;
+        }
+        return pages;
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Writes a document's pages to some output format one at a time, as they
+ * are handed to it.
+ */
+public interface PageWriter extends PageListener {
+    
+    public void writeStart() throws IOException;
+    
+    public void writePage(PageView page) throws IOException;
+    
+    /**
+     * Finishes the output and flushes, but does not close, the underlying
+     * stream.
+     */
+    public void writeEnd() throws IOException;
+    
+    public void setStats(ExtractionStats stats);
+
+}
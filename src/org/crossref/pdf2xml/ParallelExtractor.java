@@ -0,0 +1,156 @@
+package org.crossref.pdf2xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.exceptions.WrappedIOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import org.crossref.pdf2xml.data.PageView;
+
+/**
+ * Extracts the pages of a document concurrently on a pool of worker
+ * threads, handing them to a PageListener in page order.
+ *
+ * PDFBox documents are not safe to share between threads, so each worker
+ * loads its own copy of the document and has its own TextExtractor. The
+ * copies after the first keep their stream contents in a scratch file,
+ * so that only their object graphs are held in memory once per thread.
+ * No more pages are extracted ahead of the listener than will keep every
+ * thread busy, so memory use stays proportional to the number of
+ * threads rather than the number of pages.
+ */
+public class ParallelExtractor {
+    
+    /* Pages submitted for each thread ahead of the one the listener is
+     * waiting for. */
+    private static final int PAGES_AHEAD = 2;
+
+    private DocumentExtractor source;
+
+    private int threads;
+
+    /**
+     * @param newSource Provides the options that each worker's
+     * TextExtractor is set up with.
+     */
+    public ParallelExtractor(DocumentExtractor newSource, int newThreads) {
+        source = newSource;
+        threads = newThreads;
+    }
+
+    /**
+     * A worker thread's own copy of the document and its extractor.
+     */
+    private static class Worker {
+        PDDocument doc;
+        List<PDPage> pages;
+        TextExtractor extractor;
+
+        Worker(PDDocument newDoc, TextExtractor newExtractor) {
+            doc = newDoc;
+            pages = DocumentLoader.getPages(doc);
+            extractor = newExtractor;
+        }
+    }
+
+    public void extract(File f, PageListener listener) throws IOException {
+        extract(f, listener, null);
+    }
+
+    /**
+     * Extract f, recording timings and counts from every worker into stats
+     * if it isn't null.
+     */
+    public void extract(final File f, PageListener listener,
+                        final ExtractionStats stats) throws IOException {
+        final PDDocument first = source.load(f, stats);
+        final int[] pageNumbers =
+            source.selectPages(DocumentLoader.getPages(first).size());
+        // No more copies of the document are loaded than there are pages
+        // to share out between them.
+        final int poolSize = Math.max(1, Math.min(threads, pageNumbers.length));
+
+        // The copy we loaded to count pages is handed to the first worker
+        // that needs one, rather than being thrown away.
+        final ConcurrentLinkedQueue<PDDocument> spare =
+            new ConcurrentLinkedQueue<PDDocument>();
+        spare.add(first);
+
+        final List<Worker> workers =
+            Collections.synchronizedList(new ArrayList<Worker>());
+        final ThreadLocal<Worker> worker = new ThreadLocal<Worker>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        // Pages in flight, in page order. Each is dropped as soon as it
+        // has been handed to the listener.
+        ArrayDeque<Future<PageView>> results = 
+            new ArrayDeque<Future<PageView>>();
+        final int ahead = poolSize * PAGES_AHEAD;
+
+        try {
+            int next = 0;
+            while (next < pageNumbers.length || !results.isEmpty()) {
+                while (next < pageNumbers.length && results.size() < ahead) {
+                    final int pageNumber = pageNumbers[next++];
+                    results.add(pool.submit(new Callable<PageView>() {
+                        @Override
+                        public PageView call() throws IOException {
+                            Worker w = worker.get();
+                            if (w == null) {
+                                PDDocument doc = spare.poll();
+                                w = new Worker(doc == null
+                                               ? source.loadCopy(f, stats)
+                                               : doc,
+                                               source.newTextExtractor(stats));
+                                workers.add(w);
+                                worker.set(w);
+                            }
+                            return w.extractor.processPage(
+                                w.pages.get(pageNumber - 1), pageNumber);
+                        }
+                    }));
+                }
+
+                listener.pageExtracted(results.poll().get());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while extracting '"
+                                             + f + "'");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new WrappedIOException("Couldn't extract page: ",
+                                         e.getCause());
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (Worker w : workers) {
+                w.doc.close();
+            }
+            for (PDDocument doc : spare) {
+                doc.close();
+            }
+        }
+    }
+
+}
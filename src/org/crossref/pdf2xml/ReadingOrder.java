@@ -0,0 +1,288 @@
+package org.crossref.pdf2xml;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Puts the runs of a page into reading order by a recursive XY-cut. The
+ * page is split at the widest whitespace gap that runs right across it,
+ * horizontally or vertically, and at any others as wide, then each part
+ * is split again in the same way until no part has a wide enough gap.
+ * Splitting only at the widest gaps means that a title over two columns
+ * is split off before the columns are split apart, rather than the
+ * paragraphs of both columns being split off together. Those parts are
+ * the page's blocks: columns, or paragraphs and headings within them.
+ * Blocks are read top to bottom between horizontal cuts and left to
+ * right between vertical ones, and the runs of a block by row, then from
+ * the left.
+ *
+ * Each split sorts the runs of the part it splits, so a page takes
+ * O(n log n) time for each level of nesting in its layout.
+ */
+class ReadingOrder {
+
+    /* A vertical gap, such as a column gutter, must be at least this many
+     * times the page's usual point size to split a part. */
+    static final float COLUMN_GAP = 1;
+
+    /* And a horizontal gap, between paragraphs say, this many. */
+    static final float BLOCK_GAP = 0.5f;
+
+    /* Gaps within this many times the usual point size of the widest are
+     * taken to be as wide, and split at together. */
+    static final float SAME_GAP = 0.1f;
+
+    private List<Text> texts;
+
+    private float[] left, top, right, bottom;
+
+    private float minColumnGap, minBlockGap, sameGap;
+
+    /* The runs of the page, by index into texts. Each part being split is
+     * a range of members, which a split sorts so that its parts become
+     * ranges in turn. */
+    private int[] members;
+
+    /* Sort keys: a float made sortable in the top half, and an index in
+     * the bottom. */
+    private long[] keys;
+
+    private ReadingOrder(List<Text> newTexts) {
+        texts = newTexts;
+        final int n = texts.size();
+        left = new float[n];
+        top = new float[n];
+        right = new float[n];
+        bottom = new float[n];
+        members = new int[n];
+        keys = new long[n];
+
+        float[] sizes = new float[n];
+        for (int i=0; i<n; i++) {
+            Text t = texts.get(i);
+            left[i] = t.getX();
+            top[i] = t.getTop();
+            right[i] = t.getX() + t.getWidth();
+            bottom[i] = t.getTop() + t.getHeight();
+            members[i] = i;
+            sizes[i] = t.getPointSize();
+        }
+
+        Arrays.sort(sizes);
+        final float size = n == 0 ? 0 : sizes[n / 2];
+        minColumnGap = COLUMN_GAP * size;
+        minBlockGap = BLOCK_GAP * size;
+        sameGap = SAME_GAP * size;
+    }
+
+    /**
+     * @return Answers a copy of page with its runs in reading order and
+     * numbered by block. Runs that span a wide gap, as those coalesced
+     * across a column gutter do, are first split into one run either side
+     * of it.
+     */
+    static Page order(Page page) {
+        splitWideRuns(page);
+
+        ReadingOrder order = new ReadingOrder(page.getText());
+        final int n = order.members.length;
+        int[] blocks = new int[n];
+        order.cut(blocks);
+
+        Page ordered = new Page(page.getClipBox(), page.getNumber());
+        int[] orderedBlocks = new int[n];
+        for (int i=0; i<n; i++) {
+            final int member = order.members[i];
+            ordered.addText(order.texts.get(member));
+            orderedBlocks[i] = blocks[member];
+        }
+        ordered.setBlocks(orderedBlocks);
+        return ordered;
+    }
+
+    /**
+     * Split each run of page at any gap between its pieces too wide to be
+     * a space between words.
+     */
+    private static void splitWideRuns(Page page) {
+        List<Text> ts = page.getText();
+        // Runs split off are added to the end of ts, and looked at in turn.
+        for (int i=0; i<ts.size(); i++) {
+            Text t = ts.get(i);
+            final float gap = Segmenter.LINE_GAP * Segmenter.spaceOf(t);
+            for (int p=1; p<t.getPieceCount(); p++) {
+                if (t.getPieceLeft(p) - t.getPieceRight(p - 1) > gap) {
+                    page.addText(t.splitAt(p));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cut the page into blocks, sorting members into reading order and
+     * numbering each run's block in blocks. Blocks are numbered in
+     * reading order.
+     */
+    private void cut(int[] blocks) {
+        final int n = members.length;
+        if (n == 0) {
+            return;
+        }
+
+        // The parts still to be cut, as ranges of members, with the next
+        // to be read on top. An explicit stack keeps deeply nested layouts
+        // off the call stack.
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = 0;
+        stack[depth++] = n;
+
+        int blockCount = 0;
+        while (depth > 0) {
+            final int to = stack[--depth];
+            final int from = stack[--depth];
+
+            sortBy(from, to, left);
+            final float columnGap = widestGap(from, to, left, right);
+            sortBy(from, to, top);
+            final float blockGap = widestGap(from, to, top, bottom);
+
+            final boolean columns = isCut(columnGap, minColumnGap)
+                                 && columnGap >= blockGap;
+            if (!columns && !isCut(blockGap, minBlockGap)) {
+                sortRows(from, to);
+                for (int i=from; i<to; i++) {
+                    blocks[members[i]] = blockCount;
+                }
+                blockCount++;
+                continue;
+            }
+
+            float[] low = top, high = bottom;
+            float minGap = Math.max(minBlockGap, blockGap - sameGap);
+            if (columns) {
+                sortBy(from, to, left);
+                low = left;
+                high = right;
+                minGap = Math.max(minColumnGap, columnGap - sameGap);
+            }
+
+            // Push the parts so that the first of them is popped first.
+            final int first = depth;
+            float reach = high[members[from]];
+            int partStart = from;
+            for (int i=from + 1; i<to; i++) {
+                final int m = members[i];
+                if (isCut(low[m] - reach, minGap)) {
+                    stack = push(stack, depth, partStart, i);
+                    depth += 2;
+                    partStart = i;
+                }
+                reach = Math.max(reach, high[m]);
+            }
+            stack = push(stack, depth, partStart, to);
+            depth += 2;
+            reverseRanges(stack, first, depth);
+        }
+    }
+
+    /**
+     * @return Answers whether a part should be cut at a gap. There must
+     * be some gap, whatever minGap is, so that every cut makes progress.
+     */
+    private static boolean isCut(float gap, float minGap) {
+        return gap > 0 && gap >= minGap;
+    }
+
+    private static int[] push(int[] stack, int depth, int from, int to) {
+        if (depth + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[depth] = from;
+        stack[depth + 1] = to;
+        return stack;
+    }
+
+    /**
+     * Reverse the order of the (from, to) pairs in stack[first] up to
+     * stack[end].
+     */
+    private static void reverseRanges(int[] stack, int first, int end) {
+        for (int i=first, j=end - 2; i<j; i+=2, j-=2) {
+            final int from = stack[i], to = stack[i + 1];
+            stack[i] = stack[j];
+            stack[i + 1] = stack[j + 1];
+            stack[j] = from;
+            stack[j + 1] = to;
+        }
+    }
+
+    /**
+     * @return Answers the widest gap between the intervals (low, high) of
+     * members from up to, but not including, to, which must be sorted by
+     * low. Answers zero if the intervals leave no gap.
+     */
+    private float widestGap(int from, int to, float[] low, float[] high) {
+        float widest = 0;
+        float reach = high[members[from]];
+        for (int i=from + 1; i<to; i++) {
+            final int m = members[i];
+            widest = Math.max(widest, low[m] - reach);
+            reach = Math.max(reach, high[m]);
+        }
+        return widest;
+    }
+
+    /**
+     * Sort members from up to, but not including, to by by[member], ties
+     * being left in index order.
+     */
+    private void sortBy(int from, int to, float[] by) {
+        for (int i=from; i<to; i++) {
+            keys[i] = key(by[members[i]], members[i]);
+        }
+        sortKeys(from, to);
+    }
+
+    /**
+     * Sort members from up to, but not including, to by baseline, then
+     * from the left.
+     */
+    private void sortRows(int from, int to) {
+        sortBy(from, to, left);
+        // Rank by position from the left, so that a second sort by
+        // baseline breaks ties by it.
+        for (int i=from; i<to; i++) {
+            keys[i] = key(texts.get(members[i]).getBaseline(), i - from);
+        }
+        Arrays.sort(keys, from, to);
+        int[] ranked = Arrays.copyOfRange(members, from, to);
+        for (int i=from; i<to; i++) {
+            members[i] = ranked[(int) keys[i]];
+        }
+    }
+
+    private void sortKeys(int from, int to) {
+        Arrays.sort(keys, from, to);
+        for (int i=from; i<to; i++) {
+            members[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * @return Answers a long that sorts by f and then by i, for i not
+     * negative.
+     */
+    private static long key(float f, int i) {
+        int bits = Float.floatToIntBits(f);
+        // Flip the magnitude of negative floats, so that the bits of all
+        // floats sort as ints in the order of the floats.
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | i;
+    }
+
+}
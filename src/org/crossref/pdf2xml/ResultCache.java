@@ -0,0 +1,238 @@
+package org.crossref.pdf2xml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of extraction output, keyed by a hash of the input
+ * document's bytes and the options it was extracted with, so that the
+ * same document arriving twice under different names is only extracted
+ * once. When the entries take up more than maxBytes the least recently
+ * used are deleted.
+ *
+ * Several threads, or processes, can share one cache directory. Entries
+ * are written to a temporary file and renamed into place only once they
+ * are complete.
+ */
+public class ResultCache {
+    
+    private static final String ENTRY_SUFFIX = ".out";
+    
+    private static final String TEMP_SUFFIX = ".tmp";
+    
+    private static final FileFilter ENTRIES = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.getName().endsWith(ENTRY_SUFFIX);
+        }
+    };
+    
+    private File dir;
+    
+    private long maxBytes;
+    
+    /* The size of the entries in the cache, give or take those added or
+     * removed by other processes since it was last counted. */
+    private long totalBytes;
+    
+    public ResultCache(File newDir, long newMaxBytes) throws IOException {
+        dir = newDir;
+        maxBytes = newMaxBytes;
+        
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new IOException("Can't create cache directory '" 
+                                  + dir + "'.");
+        }
+        totalBytes = countBytes(dir.listFiles(ENTRIES));
+    }
+    
+    /**
+     * @return Answers the key for the output of extracting input with the
+     * given options.
+     */
+    public static String keyFor(File input, String options) 
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        
+        digest.update(options.getBytes("UTF-8"));
+        digest.update((byte) 0);
+        
+        InputStream in = new FileInputStream(input);
+        try {
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+    
+    private File entryFile(String key) {
+        return new File(dir, key + ENTRY_SUFFIX);
+    }
+    
+    /**
+     * Copy the output stored under key, if there is any, to os.
+     * 
+     * @return Answers false if there is no entry for key.
+     */
+    public boolean copyTo(String key, OutputStream os) throws IOException {
+        File f = entryFile(key);
+        InputStream in;
+        try {
+            in = new FileInputStream(f);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        
+        try {
+            // Marks the entry as recently used.
+            f.setLastModified(System.currentTimeMillis());
+            
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            os.flush();
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+    
+    /**
+     * @return Answers a new entry for key. Write the output to its stream
+     * and then either commit() or abort() it.
+     */
+    public Entry newEntry(String key) throws IOException {
+        return new Entry(key);
+    }
+    
+    public class Entry {
+        private String key;
+        private File temp;
+        private OutputStream out;
+        
+        private Entry(String newKey) throws IOException {
+            key = newKey;
+            temp = File.createTempFile(key, TEMP_SUFFIX, dir);
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+        }
+        
+        public OutputStream getOutputStream() {
+            return out;
+        }
+        
+        /**
+         * Make the output written so far the entry for this key.
+         */
+        public void commit() throws IOException {
+            out.close();
+            File f = entryFile(key);
+            final long length = temp.length();
+            if (temp.renameTo(f)) {
+                added(length);
+            } else {
+                // Another thread or process got there first with the
+                // same output.
+                temp.delete();
+            }
+            temp = null;
+        }
+        
+        /**
+         * Throw away the output written so far. Does nothing if the entry
+         * has been committed.
+         */
+        public void abort() {
+            if (temp != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // The file is going anyway.
+                }
+                temp.delete();
+                temp = null;
+            }
+        }
+    }
+    
+    private synchronized void added(long length) {
+        totalBytes += length;
+        if (totalBytes > maxBytes) {
+            evict();
+        }
+    }
+    
+    /**
+     * Delete the least recently used entries until the cache fits in
+     * maxBytes.
+     */
+    private void evict() {
+        File[] entries = dir.listFiles(ENTRIES);
+        if (entries == null) {
+            return;
+        }
+        
+        final long[] lastUsed = new long[entries.length];
+        final Integer[] order = new Integer[entries.length];
+        for (int i=0; i<entries.length; i++) {
+            lastUsed[i] = entries[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return lastUsed[a] < lastUsed[b] ? -1 
+                     : lastUsed[a] > lastUsed[b] ? 1 : 0;
+            }
+        });
+        
+        totalBytes = countBytes(entries);
+        for (int i=0; i<order.length && totalBytes>maxBytes; i++) {
+            File f = entries[order[i]];
+            final long length = f.length();
+            if (f.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+    
+    private static long countBytes(File[] fs) {
+        long bytes = 0;
+        if (fs != null) {
+            for (File f : fs) {
+                bytes += f.length();
+            }
+        }
+        return bytes;
+    }
+
+}
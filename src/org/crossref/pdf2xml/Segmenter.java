@@ -0,0 +1,238 @@
+package org.crossref.pdf2xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.Segmentation;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Finds the lines and words of a page whose runs have been coalesced.
+ * Runs on the same row are put in one line unless there is a wide gap
+ * between them, such as a column gutter, and each run is split into words
+ * at whitespace and at gaps between the glyphs it was built from. This
+ * takes a pass over the rows and one over the characters of the page.
+ *
+ * If the page has been put into reading order, no line crosses from one
+ * block into another, and lines are in that order rather than from the
+ * top of the page down.
+ */
+class Segmenter {
+
+    /* A gap of more than this many spaces between runs on a row starts a
+     * new line. */
+    static final float LINE_GAP = 3;
+
+    /* A gap of more than this much of a space between glyphs starts a new
+     * word, as with PDFTextStripper's default spacing tolerance. */
+    static final float WORD_GAP = 0.5f;
+
+    /* The width of a space, as a fraction of the point size, for runs whose
+     * font doesn't say. */
+    private static final float DEFAULT_SPACE = 0.25f;
+
+    private Segmenter() {
+    }
+
+    /**
+     * @return Answers the lines and words of page, grouping rows whose
+     * baselines are each within baselineTolerance of the one above into
+     * the same lines.
+     */
+    static Segmentation segment(Page page, float baselineTolerance) {
+        List<Text> ts = page.getText();
+        final int n = ts.size();
+        final int[] blocks = page.getBlocks();
+
+        IdentityHashMap<Text, Integer> indexes =
+            new IdentityHashMap<Text, Integer>(n);
+        int charCount = 0;
+        for (int i=0; i<n; i++) {
+            Text t = ts.get(i);
+            indexes.put(t, i);
+            charCount += t.getRun().length();
+        }
+
+        // Every line has at least one run, and every word at least one
+        // character, so these are as large as they need be.
+        int[] lineStarts = new int[n + 1];
+        int[] lineRuns = new int[n];
+        int lineCount = 0;
+        int member = 0;
+
+        for (int row=0; row<page.getRowCount(); ) {
+            List<Text> group = new ArrayList<Text>(page.getRow(row));
+            row++;
+            while (row < page.getRowCount()
+                    && page.getRowBaseline(row) - page.getRowBaseline(row - 1)
+                       <= baselineTolerance) {
+                group.addAll(page.getRow(row));
+                row++;
+            }
+            Collections.sort(group);
+
+            Text previous = null;
+            int previousIndex = -1;
+            for (Text t : group) {
+                final int index = indexes.get(t);
+                if (previous == null
+                        || t.getX() - (previous.getX() + previous.getWidth())
+                           > LINE_GAP * Math.max(spaceOf(previous),
+                                                 spaceOf(t))
+                        || (blocks != null 
+                            && blocks[index] != blocks[previousIndex])) {
+                    lineStarts[lineCount++] = member;
+                }
+                lineRuns[member++] = index;
+                previous = t;
+                previousIndex = index;
+            }
+        }
+        lineStarts[lineCount] = member;
+        lineStarts = Arrays.copyOf(lineStarts, lineCount + 1);
+        if (blocks != null) {
+            lineRuns = inReadingOrder(lineStarts, lineRuns);
+        }
+
+        Words words = new Words(n, charCount);
+        for (int i=0; i<n; i++) {
+            words.split(i, ts.get(i));
+        }
+
+        return new Segmentation(lineStarts, lineRuns, words.runWords,
+                                Arrays.copyOf(words.begins, words.count),
+                                Arrays.copyOf(words.ends, words.count),
+                                Arrays.copyOf(words.lefts, words.count),
+                                Arrays.copyOf(words.widths, words.count));
+    }
+
+    /**
+     * Put lines in the order of their earliest run in the page's text,
+     * which is reading order, rewriting lineStarts to match.
+     *
+     * @return Answers lineRuns in that order.
+     */
+    private static int[] inReadingOrder(int[] lineStarts, int[] lineRuns) {
+        final int lineCount = lineStarts.length - 1;
+        long[] keys = new long[lineCount];
+        for (int line=0; line<lineCount; line++) {
+            int first = Integer.MAX_VALUE;
+            for (int m=lineStarts[line]; m<lineStarts[line + 1]; m++) {
+                first = Math.min(first, lineRuns[m]);
+            }
+            keys[line] = ((long) first << 32) | line;
+        }
+        Arrays.sort(keys);
+
+        int[] ordered = new int[lineRuns.length];
+        int[] orderedStarts = new int[lineCount + 1];
+        int member = 0;
+        for (int i=0; i<lineCount; i++) {
+            final int line = (int) keys[i];
+            orderedStarts[i] = member;
+            for (int m=lineStarts[line]; m<lineStarts[line + 1]; m++) {
+                ordered[member++] = lineRuns[m];
+            }
+        }
+        orderedStarts[lineCount] = member;
+        System.arraycopy(orderedStarts, 0, lineStarts, 0, lineCount + 1);
+        return ordered;
+    }
+
+    /**
+     * @return Answers the width of a space in t's font, or an estimate of
+     * it from t's size.
+     */
+    static float spaceOf(Text t) {
+        final float space = t.getSpaceWidth();
+        // Also catches the NaN some fonts give.
+        if (space > 0) {
+            return space;
+        }
+        return t.getPointSize() * DEFAULT_SPACE;
+    }
+
+    /**
+     * The words found so far, in columns.
+     */
+    private static class Words {
+        int[] runWords;
+        int[] begins, ends;
+        float[] lefts, widths;
+        int count = 0;
+
+        /* The word being built up, if open. */
+        boolean open = false;
+        int begin, end;
+        float left, right;
+
+        Words(int runCount, int charCount) {
+            runWords = new int[runCount + 1];
+            begins = new int[charCount];
+            ends = new int[charCount];
+            lefts = new float[charCount];
+            widths = new float[charCount];
+        }
+
+        /**
+         * Split t, run number i, into words. The characters of each piece
+         * of t are taken to share its width equally.
+         */
+        void split(int i, Text t) {
+            runWords[i] = count;
+
+            final String run = t.getRun();
+            final float gap = WORD_GAP * spaceOf(t);
+            final int pieces = t.getPieceCount();
+
+            for (int p=0; p<pieces; p++) {
+                final int from = t.getPieceStart(p);
+                final int to = p + 1 < pieces
+                             ? t.getPieceStart(p + 1) : run.length();
+                final float pieceLeft = t.getPieceLeft(p);
+                final float charWidth = to > from
+                                      ? (t.getPieceRight(p) - pieceLeft)
+                                        / (to - from)
+                                      : 0;
+
+                if (open && pieceLeft - right > gap) {
+                    close();
+                }
+
+                for (int c=from; c<to; c++) {
+                    if (Character.isWhitespace(run.charAt(c))) {
+                        close();
+                        continue;
+                    }
+                    final float charLeft = pieceLeft + (c - from) * charWidth;
+                    if (!open) {
+                        open = true;
+                        begin = c;
+                        left = charLeft;
+                    }
+                    end = c + 1;
+                    right = charLeft + charWidth;
+                }
+            }
+            close();
+
+            runWords[i + 1] = count;
+        }
+
+        void close() {
+            if (open) {
+                begins[count] = begin;
+                ends[count] = end;
+                lefts[count] = left;
+                widths[count] = right - left;
+                count++;
+                open = false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.crossref.pdf2xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes everything written to it to two streams. Closing it closes
+ * neither.
+ */
+class TeeOutputStream extends OutputStream {
+    
+    private OutputStream first;
+    
+    private OutputStream second;
+    
+    TeeOutputStream(OutputStream newFirst, OutputStream newSecond) {
+        first = newFirst;
+        second = newSecond;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        first.write(b);
+        second.write(b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        first.write(b, off, len);
+        second.write(b, off, len);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        first.flush();
+        second.flush();
+    }
+
+}
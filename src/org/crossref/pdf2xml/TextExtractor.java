@@ -9,32 +9,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
 import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.PDGraphicsState;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.pdfbox.util.TextPosition;
-import org.w3c.dom.CDATASection;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
+import org.crossref.pdf2xml.data.ColorCache;
+import org.crossref.pdf2xml.data.CompactPage;
+import org.crossref.pdf2xml.data.FontInfo;
+import org.crossref.pdf2xml.data.FontInfoCache;
 import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.PageView;
+import org.crossref.pdf2xml.data.StyleTable;
 import org.crossref.pdf2xml.data.Text;
 
 /**
@@ -45,158 +33,538 @@ import org.crossref.pdf2xml.data.Text;
  */
 public class TextExtractor extends PDFTextStripper {
 	
-	private ArrayList<Page> previousPages = new ArrayList<Page>();
+	/* A run can only be a duplicate of one that starts within this much
+	 * of its width of it, however wide the baseline tolerance, so that
+	 * doubled letters such as "ll" are not taken for copies. */
+	static final float DUPLICATE_OVERLAP = 0.2f;
+	
+	private ArrayList<PageView> previousPages = new ArrayList<PageView>();
 	
 	private Page currentPage = null;
 	
+	private PageView lastPage = null;
+	
 	private int pageCount = 0;
 	
+	private List<PageListener> listeners = new ArrayList<PageListener>();
+	
+	private boolean retainPages = true;
+	
+	private boolean coalesceOnline = false;
+	
+	private Text currentRun = null;
+	
+	private ExtractionStats stats = null;
+	
+	private FontInfoCache fontCache = new FontInfoCache();
+	
+	private ColorCache strokeColors = new ColorCache();
+	
+	private ColorCache nonStrokeColors = new ColorCache();
+	
+	private int glyphCount = 0;
+	
+	private int allocationCount = 0;
+	
+	private float baselineTolerance = 0;
+	
+	private StyleTable compactStyles = null;
+	
+	private PageCache pageCache = null;
+	
+	private PageDigester digester = null;
+	
+	/* The key under which the page being extracted is to be cached, if it
+	 * is. */
+	private String cacheKey = null;
+	
+	private boolean words = false;
+	
+	private boolean readingOrder = false;
+	
+	private boolean deduplicateFirst = false;
+	
 	public TextExtractor() throws IOException {
 		super();
 	}
 	
+	/**
+	 * Hand each page to listener as soon as it has been extracted, rather
+	 * than waiting for the whole document.
+	 */
+	public void addPageListener(PageListener listener) {
+	    listeners.add(listener);
+	}
+	
+	public void removePageListener(PageListener listener) {
+	    listeners.remove(listener);
+	}
+	
+	/**
+	 * Whether extracted pages should be kept for getPages(), toXml() and
+	 * toMaskImage(). Turn this off and use a PageListener to keep memory
+	 * use proportional to a single page.
+	 */
+	public void setRetainPages(boolean newRetainPages) {
+	    retainPages = newRetainPages;
+	}
+	
+	/**
+	 * Coalesce each glyph into the run before it as it is read, when it
+	 * follows on from the run in the same style, instead of creating a
+	 * Text per glyph and merging them in a separate pass once the page is
+	 * complete. Glyphs drawn out of order, or far apart on the same
+	 * baseline, are left as separate runs.
+	 */
+	public void setCoalesceOnline(boolean newCoalesceOnline) {
+	    coalesceOnline = newCoalesceOnline;
+	}
+	
+	/**
+	 * Treat rows of text whose baselines are within tolerance of the row
+	 * above as one row when coalescing runs and removing duplicates, so
+	 * that jittered baselines and superscripts are merged, and duplicates
+	 * drawn within tolerance of the original, such as drop shadows, are
+	 * removed. Defaults to zero, which groups by exact baseline.
+	 */
+	public void setBaselineTolerance(float tolerance) {
+	    baselineTolerance = tolerance;
+	}
+	
+	/**
+	 * Once a page's runs have been coalesced, group them into lines and
+	 * split them into words, which are kept as the page's Segmentation.
+	 */
+	public void setWords(boolean newWords) {
+	    words = newWords;
+	}
+	
+	/**
+	 * Once a page's runs have been coalesced, put them into reading order
+	 * and number the layout blocks, such as columns and paragraphs, that
+	 * they belong to. Runs that span a column gutter are split first.
+	 * 
+	 * @see ReadingOrder
+	 */
+	public void setReadingOrder(boolean newReadingOrder) {
+	    readingOrder = newReadingOrder;
+	}
+	
+	/**
+	 * Remove duplicate glyphs before rows are coalesced, rather than
+	 * duplicate runs after. A line drawn twice in the same style is then
+	 * removed, where otherwise its copies are coalesced into doubled text
+	 * ('HHeelllloo') that is no longer seen as a duplicate. Deduplication
+	 * has more text to look at this way, so it takes longer.
+	 */
+	public void setDeduplicateFirst(boolean newDeduplicateFirst) {
+	    deduplicateFirst = newDeduplicateFirst;
+	}
+	
+	/**
+	 * Turn each page into a CompactPage once it has been extracted, so
+	 * that pages kept by getPages() or by listeners take up much less
+	 * memory. The pages of a document share one style table.
+	 */
+	public void setCompactPages(boolean compact) {
+	    compactStyles = compact ? new StyleTable() : null;
+	}
+	
+	/**
+	 * Record stage timings and glyph and run counts into newStats, or into
+	 * nothing if it is null.
+	 */
+	public void setStats(ExtractionStats newStats) {
+	    stats = newStats;
+	}
+	
+	/**
+	 * Look up each page in cache, by a digest of its content stream and
+	 * resources, and reuse the page found there rather than extracting it
+	 * again. Pages that are extracted are added to the cache.
+	 * 
+	 * The digests of resources shared between pages are remembered, so
+	 * use a new TextExtractor for each document.
+	 */
+	public void setPageCache(PageCache cache) {
+	    pageCache = cache;
+	    digester = cache == null ? null : new PageDigester();
+	}
+	
+	/**
+	 * Extract a single page, numbering it pageNumber rather than by the
+	 * count of pages this extractor has already seen. This lets several
+	 * extractors share out the pages of one document.
+	 * 
+	 * @return Answers the extracted page.
+	 */
+	public PageView processPage(PDPage page, int pageNumber) throws IOException {
+	    pageCount = pageNumber - 1;
+	    setShouldSeparateByBeads(false);
+	    
+	    if (page.getContents() == null) {
+	        // A page without a content stream has no text on it at all.
+	        if (stats != null) {
+	            stats.add(ExtractionStats.Counter.PAGES, 1);
+	        }
+	        finishPage(new Page(page.findCropBox(), ++pageCount));
+	    } else if (pageCache != null) {
+	        processCachedPage(page);
+	    } else {
+	        processStream(page, 
+	                      page.getResources(), 
+	                      page.getContents().getStream());
+	    }
+	    
+	    PageView extracted = lastPage;
+	    lastPage = null;
+	    return extracted;
+	}
+	
+	private void processCachedPage(PDPage page) throws IOException {
+	    // Online coalescing, the baseline tolerance, the order of
+	    // deduplication, reading order and segmentation change the pages
+	    // found, so pages extracted with
+	    // different settings are kept apart.
+	    final String key = (coalesceOnline ? "online-" : "offline-")
+	                     + (deduplicateFirst ? "dedupfirst-" : "")
+	                     + (readingOrder ? "ordered-" : "")
+	                     + (words ? "words-" : "")
+	                     + baselineTolerance + "-" + digester.digest(page);
+	    
+	    PageView cached = pageCache.get(key);
+	    if (cached != null) {
+	        if (stats != null) {
+	            stats.add(ExtractionStats.Counter.PAGES, 1);
+	            stats.add(ExtractionStats.Counter.PAGE_CACHE_HITS, 1);
+	        }
+	        // The cached page may have come from anywhere in any document.
+	        finishPage(cached.withNumber(++pageCount));
+	    } else {
+	        cacheKey = key;
+	        try {
+	            processStream(page, 
+	                          page.getResources(), 
+	                          page.getContents().getStream());
+	        } finally {
+	            cacheKey = null;
+	        }
+	    }
+	}
+	
 	@Override
 	public void processStream(PDPage aPage, PDResources resources,
 			COSStream cosStream) throws IOException {
 		currentPage = new Page(aPage.findCropBox(), ++pageCount);
+		currentRun = null;
+		glyphCount = 0;
+		allocationCount = 0;
 		
+		final long start = System.nanoTime();
 		super.processStream(aPage, resources, cosStream);
-		coalesceRows(currentPage);
-		removeDuplicates(currentPage);
+		final long processed = System.nanoTime();
+		int duplicates = 0;
+		if (deduplicateFirst) {
+		    duplicates = removeDuplicates(currentPage);
+		}
+		final long dedupedFirst = System.nanoTime();
+		// Glyphs merged as they were read never had a Text of their own.
+		int merged = glyphCount - allocationCount;
+		if (!coalesceOnline) {
+		    merged += coalesceRows(currentPage);
+		}
+		currentRun = null;
+		final long coalesced = System.nanoTime();
+		if (!deduplicateFirst) {
+		    duplicates = removeDuplicates(currentPage);
+		}
+		final long deduplicated = System.nanoTime();
+		// Segmentation refers to runs by their place in the page, so it
+		// comes after they have been put in order.
+		if (readingOrder) {
+		    currentPage = ReadingOrder.order(currentPage);
+		}
+		final long ordered = System.nanoTime();
+		if (words) {
+		    currentPage.setSegmentation(
+		        Segmenter.segment(currentPage, baselineTolerance));
+		}
+		
+		if (stats != null) {
+		    final long segmented = System.nanoTime();
+		    stats.addTime(ExtractionStats.Stage.PROCESS, processed - start);
+		    stats.addTime(ExtractionStats.Stage.COALESCE, 
+		                  coalesced - dedupedFirst);
+		    // Only one of these spans does any deduplication.
+		    stats.addTime(ExtractionStats.Stage.DEDUPLICATE, 
+		                  (dedupedFirst - processed) 
+		                  + (deduplicated - coalesced));
+		    stats.addTime(ExtractionStats.Stage.ORDER, ordered - deduplicated);
+		    stats.addTime(ExtractionStats.Stage.SEGMENT, segmented - ordered);
+		    stats.add(ExtractionStats.Counter.PAGES, 1);
+		    stats.add(ExtractionStats.Counter.GLYPHS, glyphCount);
+		    stats.add(ExtractionStats.Counter.TEXT_ALLOCATIONS, allocationCount);
+		    stats.add(ExtractionStats.Counter.DUPLICATES_REMOVED, duplicates);
+		    stats.add(ExtractionStats.Counter.COALESCED_RUNS, merged);
+		    stats.add(ExtractionStats.Counter.RUNS, 
+		              currentPage.getText().size());
+		    final int[] blocks = currentPage.getBlocks();
+		    if (blocks != null && blocks.length > 0) {
+		        // Blocks are numbered in reading order, from zero.
+		        stats.add(ExtractionStats.Counter.BLOCKS, 
+		                  blocks[blocks.length - 1] + 1);
+		    }
+		    if (words) {
+		        stats.add(ExtractionStats.Counter.WORDS, 
+		                  currentPage.getSegmentation().getWordCount());
+		    }
+		}
 		
-		previousPages.add(currentPage);
+		Page finished = currentPage;
 		currentPage = null;
+		finishPage(finished);
+	}
+	
+	private void finishPage(PageView page) throws IOException {
+	    if (compactStyles != null && page instanceof Page) {
+	        page = new CompactPage((Page) page, compactStyles);
+	    }
+	    if (cacheKey != null) {
+	        // Cached before any listener sees the page, so that what is
+	        // cached can't depend on what listeners do with it.
+	        pageCache.put(cacheKey, page);
+	        cacheKey = null;
+	    }
+	    lastPage = page;
+	    if (retainPages) {
+	        previousPages.add(page);
+	    }
+	    for (PageListener listener : listeners) {
+	        listener.pageExtracted(page);
+	    }
 	}
 
 	protected void processTextPosition(TextPosition tp) {
 		PDGraphicsState gs = getGraphicsState();
-        currentPage.addText(Text.newFor(tp, gs));
+		glyphCount++;
+		
+		final int strokeColor = strokeColors.pack(gs.getStrokingColor());
+		final int nonStrokeColor = 
+		    nonStrokeColors.pack(gs.getNonStrokingColor());
+		
+		if (coalesceOnline && currentRun != null
+		        && currentRun.hasMatchingStyle(tp, strokeColor, 
+		                                       nonStrokeColor)
+		        && currentRun.isIncidentToRight(tp)) {
+		    currentRun.addAfter(tp);
+		} else {
+		    currentRun = Text.newFor(tp, fontCache.get(tp.getFont()),
+		                             strokeColor, nonStrokeColor);
+		    // Only these look at the glyphs a run was built from.
+		    currentRun.setKeepPieces(words || readingOrder);
+		    currentPage.addText(currentRun);
+		    allocationCount++;
+		}
 	}
 	
-	private void coalesceRows(Page page) {
-		for (Float f : page.getYPosWithText()) {
-			List<Text> ts = page.getTextAtY(f);
+	/**
+	 * @return Answers the row after the last of the group that starts at
+	 * row: those rows whose baselines are each within baselineTolerance of
+	 * the one above.
+	 */
+	private int groupEnd(Page page, int row) {
+		int end = row + 1;
+		while (end < page.getRowCount()
+				&& page.getRowBaseline(end) - page.getRowBaseline(end - 1)
+				   <= baselineTolerance) {
+			end++;
+		}
+		return end;
+	}
+	
+	/**
+	 * @return Answers the text in rows from up to, but not including, to.
+	 * A single row is answered as is, rather than copied.
+	 */
+	private static List<Text> groupText(Page page, int from, int to) {
+		if (to - from == 1) {
+			return page.getRow(from);
+		}
+		List<Text> ts = new ArrayList<Text>();
+		for (int row=from; row<to; row++) {
+			ts.addAll(page.getRow(row));
+		}
+		return ts;
+	}
+	
+	/**
+	 * Merge each run into the one before it on its row, if that has the
+	 * same style. Package-private, as is removeDuplicates(), so that
+	 * DensePageBenchmark can time it alone.
+	 * 
+	 * @return Answers the number of runs merged into others.
+	 */
+	int coalesceRows(Page page) {
+		int merged = 0;
+		for (int row=0; row<page.getRowCount(); ) {
+			final int end = groupEnd(page, row);
+			List<Text> ts = groupText(page, row, end);
+			row = end;
 			
 			Collections.sort(ts);
 			
-			int i=0;
-			while (i+1 < ts.size()) {
-				Text first = ts.get(i);
-				Text snd = ts.get(i+1);
-				
-				if (first.hasMatchingStyle(snd)) {
-					first.addAfter(snd);
-					page.removeText(snd);
+			// Removal only marks text, so ts can be walked in one pass
+			// while runs are merged into the current one.
+			Text current = null;
+			for (Text t : ts) {
+				if (current != null && current.hasMatchingStyle(t)) {
+					current.addAfter(t);
+					page.removeText(t);
+					merged++;
 				} else {
-					i++;
+					current = t;
 				}
 			}
 		}
+		return merged;
 	}
 	
-	// TODO Should handle drop shadow that is positioned on a slightly
-	// different x, y.
-	private void removeDuplicates(Page page) {
-		for (Float f : page.getYPosWithText()) {
-			List<Text> ts = page.getTextAtY(f);
+	private int quantize(float f) {
+		if (baselineTolerance > 0) {
+			return (int) Math.floor(f / baselineTolerance);
+		}
+		return Float.floatToIntBits(f);
+	}
+	
+	private static Object fontOf(Text t) {
+		final FontInfo fontInfo = t.getFontInfo();
+		return fontInfo.getFont() == null ? fontInfo : fontInfo.getFont();
+	}
+	
+	private static int duplicateHash(String run, int x, int y) {
+		final int h = (run.hashCode() * 31 + x) * 31 + y;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Remove every run that repeats one before it: the same text in the
+	 * same font, drawn almost on top of it. Baselines may differ by up to
+	 * baselineTolerance, but x by no more than DUPLICATE_OVERLAP of the
+	 * run's width as well, since runs are still single glyphs here and
+	 * the second letter of "ll" lies just one glyph along.
+	 * 
+	 * Colour is deliberately not compared, as it wasn't before. Fake bold
+	 * draws a glyph twice a fraction of a point apart, and a drop shadow
+	 * draws it again in grey, and neither copy is text of its own.
+	 * 
+	 * Runs are hashed by text, font and quantized position, so this takes
+	 * one pass over the page however the copies are spread over it.
+	 * 
+	 * @return Answers the number of runs removed.
+	 */
+	int removeDuplicates(Page page) {
+		List<Text> ts = page.getText();
+		
+		// An open-addressed table of the runs kept so far, with their
+		// hashes alongside, so that nothing is allocated per run.
+		int capacity = 16;
+		while (capacity < ts.size() * 2) {
+			capacity *= 2;
+		}
+		final int mask = capacity - 1;
+		Text[] kept = new Text[capacity];
+		int[] keptHashes = new int[capacity];
+		
+		// With a tolerance, a copy can fall in a cell next to that of its
+		// original.
+		final int reach = baselineTolerance > 0 ? 1 : 0;
+		int removed = 0;
+		
+		for (Text t : ts) {
+			final String run = t.getRun();
+			final Object font = fontOf(t);
+			final int x = quantize(t.getX());
+			final int y = quantize(t.getBaseline());
+			final float maxDx = Math.min(baselineTolerance,
+			                             DUPLICATE_OVERLAP * t.getWidth());
 			
-			Collections.sort(ts);
+			boolean duplicate = false;
+			for (int dx=-reach; dx<=reach && !duplicate; dx++) {
+				for (int dy=-reach; dy<=reach && !duplicate; dy++) {
+					final int h = duplicateHash(run, x + dx, y + dy);
+					for (int i=h & mask; kept[i] != null; i=(i + 1) & mask) {
+						Text original = kept[i];
+						if (keptHashes[i] == h
+								&& fontOf(original) == font
+								&& quantize(original.getX()) == x + dx
+								&& quantize(original.getBaseline()) == y + dy
+								&& original.getRun().equals(run)
+								&& Math.abs(original.getX() - t.getX()) 
+								   <= maxDx
+								&& Math.abs(original.getBaseline() 
+								            - t.getBaseline()) 
+								   <= baselineTolerance) {
+							duplicate = true;
+							break;
+						}
+					}
+				}
+			}
 			
-			int i=0;
-			while (i+1 < ts.size()) {
-				Text first = ts.get(i);
-				Text snd = ts.get(i+1);
-				
-				if (first.getRun().equals(snd.getRun())
-						&& first.getX() == snd.getX()) {
-					page.removeText(snd);
-				} else {
-					i++;
+			if (duplicate) {
+				page.removeText(t);
+				removed++;
+			} else {
+				final int h = duplicateHash(run, x, y);
+				int i = h & mask;
+				while (kept[i] != null) {
+					i = (i + 1) & mask;
 				}
+				kept[i] = t;
+				keptHashes[i] = h;
 			}
 		}
+		
+		return removed;
 	}
 	
-	public List<Page> getPages() {
+	public List<PageView> getPages() {
 	    return previousPages;
 	}
 	
 	public String toString() {
-		String s = "";
-		for (Page page : previousPages) {
-			s += "Page @ " + page.getClipBox().getUpperRightY()
-						   + ", " + page.getClipBox().getLowerLeftX();
+		StringBuilder s = new StringBuilder();
+		for (PageView page : previousPages) {
+			s.append("Page @ ").append(page.getClipBox().getUpperRightY())
+			 .append(", ").append(page.getClipBox().getLowerLeftX());
 			for (Text t : page.getText()) {
-				s += t.getRun() + " @ " + t.getX() + "," + t.getBaseline() 
-							+ " w " + t.getWidth()
-							+ " : " + t.getBaseFontName() 
-							+ " "   + t.getPointSize() + "pt"
-							+ " C " + t.getForegroundColor()
-							+ "\n";
+				s.append(t.getRun()).append(" @ ").append(t.getX())
+				 .append(',').append(t.getBaseline())
+				 .append(" w ").append(t.getWidth())
+				 .append(" : ").append(t.getBaseFontName())
+				 .append(' ').append(t.getPointSize()).append("pt")
+				 .append(" C ").append(t.getForegroundColor())
+				 .append('\n');
 			}
 		}
-		return s;
+		return s.toString();
 	}
 	
 	public String toXml() {
-		String r = "";
+		StringWriter sw = new StringWriter();
 		
 		try {
-			DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
-			DocumentBuilder b = f.newDocumentBuilder();
-			
-			Document doc = b.newDocument();
-			Element pdf2xml = doc.createElement("pdf2xml");
-			doc.appendChild(pdf2xml);
-			
-			for (Page page : previousPages) {
-				Element pageEle = doc.createElement("page");
-				PDRectangle cb = page.getClipBox();
-				pageEle.setAttribute("width", String.valueOf(cb.getWidth()));
-				pageEle.setAttribute("height", String.valueOf(cb.getHeight()));
-				pageEle.setAttribute("number", String.valueOf(page.getNumber()));
-				pdf2xml.appendChild(pageEle);
-				
-				for (Text t : page.getText()) {
-					Element text = doc.createElement("text");
-					text.setAttribute("top", String.valueOf(t.getTop()));
-					text.setAttribute("left", String.valueOf(t.getX()));
-					text.setAttribute("width", String.valueOf(t.getWidth()));
-					text.setAttribute("height", String.valueOf(t.getHeight()));
-					text.setAttribute("size", String.valueOf((int) t.getPointSize()));
-					text.setAttribute("family", t.getFontFamily());
-					text.setAttribute("face", t.getFontFace());
-					text.setAttribute("color", t.getForegroundColor());
-				
-					CDATASection cdata = doc.createCDATASection(t.getRun());
-				
-					pageEle.appendChild(text);
-					text.appendChild(cdata);
-				}
+			XmlPageWriter w = new XmlPageWriter(sw);
+			w.writeStart();
+			for (PageView page : previousPages) {
+				w.writePage(page);
 			}
-			
-			Source source = new DOMSource(doc);
-			StringWriter sw = new StringWriter();
-			Result result = new StreamResult(sw);
-			
-			Transformer xformer = TransformerFactory.newInstance().newTransformer();
-			xformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			xformer.setOutputProperty(OutputKeys.STANDALONE, "no");
-			xformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-			xformer.transform(source, result);
-			
-			return sw.toString();
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-		} catch (TransformerFactoryConfigurationError e) {
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		} catch (ParserConfigurationException e) {
+			w.writeEnd();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-        
-		return r;
+		
+		return sw.toString();
 	}
 	
 	/**
@@ -204,7 +572,14 @@ public class TextExtractor extends PDFTextStripper {
 	 * the locations of text runs.
 	 */
 	public BufferedImage toMaskImage(int pageN) {
-	    Page p = previousPages.get(pageN - 1);
+	    return toMaskImage(previousPages.get(pageN - 1));
+	}
+	
+	/**
+	 * @return Answers an image that contains coloured rectangles representing
+	 * the locations of text runs on p.
+	 */
+	public static BufferedImage toMaskImage(PageView p) {
 	    BufferedImage bi = new BufferedImage((int) p.getClipBox().getWidth(), 
 	                                         (int) p.getClipBox().getHeight(),
 	                                         BufferedImage.TYPE_INT_RGB);
@@ -0,0 +1,356 @@
+package org.crossref.pdf2xml;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.pdfbox.exceptions.WrappedIOException;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import org.crossref.pdf2xml.data.FontSpec;
+import org.crossref.pdf2xml.data.PageView;
+import org.crossref.pdf2xml.data.Segmentation;
+import org.crossref.pdf2xml.data.Text;
+
+/**
+ * Writes pdf2xml XML one page at a time. Unlike building a DOM for the
+ * whole document, each page element is written out as soon as it is
+ * handed to writePage(), so nothing but the current page need be kept
+ * in memory. The output conforms to pdf2xml.dtd.
+ */
+public class XmlPageWriter implements PageWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String CDATA_END = "]]>";
+
+    private Writer writer;
+
+    private XMLStreamWriter xml;
+
+    private CountingOutputStream counter = null;
+
+    private ExtractionStats stats = null;
+
+    private boolean fontspecs = false;
+
+    /* Ids of the fontspecs written so far, which are numbered across the
+     * whole document. */
+    private HashMap<FontSpec, Integer> fontspecIds =
+        new HashMap<FontSpec, Integer>();
+
+    public XmlPageWriter(OutputStream os) throws IOException {
+        this(new CountingOutputStream(os));
+    }
+
+    private XmlPageWriter(CountingOutputStream os) throws IOException {
+        this(new OutputStreamWriter(os, ENCODING));
+        counter = os;
+    }
+
+    public XmlPageWriter(Writer newWriter) throws IOException {
+        writer = newWriter;
+        try {
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+        } catch (XMLStreamException e) {
+            throw new WrappedIOException("Can't create XML writer: ", e);
+        }
+    }
+
+    /**
+     * Record the time spent writing pages, and if this writer was created
+     * for an OutputStream the number of bytes written, header and footer
+     * included, into newStats.
+     */
+    @Override
+    public void setStats(ExtractionStats newStats) {
+        stats = newStats;
+    }
+
+    /**
+     * Write each distinct style once, as a fontspec element, and have text
+     * elements refer to it with a font attribute rather than repeating
+     * their size, family, face and colour. A fontspec is written at the
+     * start of the first page that uses it, and ids are unique across the
+     * document.
+     */
+    public void setFontspecs(boolean newFontspecs) {
+        fontspecs = newFontspecs;
+    }
+
+    /**
+     * Writes the XML declaration and opens the pdf2xml root element.
+     */
+    @Override
+    public void writeStart() throws IOException {
+        final long startBytes = counter == null ? 0 : counter.count;
+        try {
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("pdf2xml");
+            xml.writeCharacters("\n");
+            // So that the header is counted here, not with the first page.
+            xml.flush();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new WrappedIOException("Can't write XML: ", e);
+        }
+        addBytesWritten(startBytes);
+    }
+
+    /**
+     * Writes a complete page element and flushes it to the underlying
+     * stream.
+     */
+    @Override
+    public void writePage(PageView page) throws IOException {
+        final long start = System.nanoTime();
+        final long startBytes = counter == null ? 0 : counter.count;
+        try {
+            PDRectangle cb = page.getClipBox();
+            xml.writeCharacters("  ");
+            xml.writeStartElement("page");
+            xml.writeAttribute("width", String.valueOf(cb.getWidth()));
+            xml.writeAttribute("height", String.valueOf(cb.getHeight()));
+            xml.writeAttribute("number", String.valueOf(page.getNumber()));
+            xml.writeCharacters("\n");
+
+            List<Text> texts = page.getText();
+            int[] fontIds = null;
+            if (fontspecs) {
+                fontIds = writeFontspecs(texts);
+            }
+
+            final int[] blocks = page.getBlocks();
+            Segmentation segmentation = page.getSegmentation();
+            if (segmentation == null) {
+                for (int i=0; i<texts.size(); i++) {
+                    Text t = texts.get(i);
+                    writeText(t, fontIds == null ? 0 : fontIds[i],
+                              blocks == null ? -1 : blocks[i], "    ");
+                    writeCData(t.getRun());
+                    xml.writeEndElement();
+                    xml.writeCharacters("\n");
+                }
+            } else {
+                writeLines(texts, fontIds, blocks, segmentation);
+            }
+
+            xml.writeCharacters("  ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.flush();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new WrappedIOException("Can't write XML: ", e);
+        }
+
+        if (stats != null) {
+            stats.addTime(ExtractionStats.Stage.SERIALIZE,
+                          System.nanoTime() - start);
+        }
+        addBytesWritten(startBytes);
+    }
+
+    /**
+     * Count the bytes written to the underlying stream since it had
+     * startBytes written to it.
+     */
+    private void addBytesWritten(long startBytes) {
+        if (stats != null && counter != null) {
+            stats.add(ExtractionStats.Counter.BYTES_WRITTEN,
+                      counter.count - startBytes);
+        }
+    }
+
+    @Override
+    public void pageExtracted(PageView page) throws IOException {
+        writePage(page);
+    }
+
+    /**
+     * Closes the pdf2xml root element and flushes, but does not close, the
+     * underlying stream.
+     */
+    @Override
+    public void writeEnd() throws IOException {
+        final long startBytes = counter == null ? 0 : counter.count;
+        try {
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+            writer.write("\n");
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new WrappedIOException("Can't write XML: ", e);
+        }
+        addBytesWritten(startBytes);
+    }
+
+    /**
+     * Writes a line element for each line of the page, holding its runs,
+     * each of which holds its words. A line lies within one block.
+     */
+    private void writeLines(List<Text> texts, int[] fontIds, int[] blocks,
+                            Segmentation segmentation) 
+            throws XMLStreamException {
+        // The runs of the line being written, looked up once each.
+        List<Text> lineTexts = new ArrayList<Text>();
+        for (int line=0; line<segmentation.getLineCount(); line++) {
+            final int size = segmentation.getLineSize(line);
+            float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+            lineTexts.clear();
+            for (int i=0; i<size; i++) {
+                Text t = texts.get(segmentation.getLineRun(line, i));
+                lineTexts.add(t);
+                left = Math.min(left, t.getX());
+                right = Math.max(right, t.getX() + t.getWidth());
+                top = Math.min(top, t.getTop());
+                bottom = Math.max(bottom, t.getTop() + t.getHeight());
+            }
+
+            xml.writeCharacters("    ");
+            xml.writeStartElement("line");
+            xml.writeAttribute("top", String.valueOf(top));
+            xml.writeAttribute("left", String.valueOf(left));
+            xml.writeAttribute("width", String.valueOf(right - left));
+            xml.writeAttribute("height", String.valueOf(bottom - top));
+            if (blocks != null) {
+                xml.writeAttribute("block", String.valueOf(
+                    blocks[segmentation.getLineRun(line, 0)]));
+            }
+            xml.writeCharacters("\n");
+
+            for (int i=0; i<size; i++) {
+                final int run = segmentation.getLineRun(line, i);
+                Text t = lineTexts.get(i);
+                writeText(t, fontIds == null ? 0 : fontIds[run],
+                          blocks == null ? -1 : blocks[run], "      ");
+                final String s = t.getRun();
+                for (int w=segmentation.getRunWordStart(run);
+                         w<segmentation.getRunWordEnd(run); w++) {
+                    xml.writeStartElement("word");
+                    xml.writeAttribute("left", 
+                        String.valueOf(segmentation.getWordLeft(w)));
+                    xml.writeAttribute("width", 
+                        String.valueOf(segmentation.getWordWidth(w)));
+                    writeCData(s.substring(segmentation.getWordBegin(w),
+                                           segmentation.getWordEnd(w)));
+                    xml.writeEndElement();
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+
+            xml.writeCharacters("    ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+        }
+    }
+
+    /**
+     * Writes the indent and start tag of a text element for t, leaving
+     * the element open for its content. The block attribute is left out
+     * if block is negative.
+     */
+    private void writeText(Text t, int fontId, int block, String indent) 
+            throws XMLStreamException {
+        xml.writeCharacters(indent);
+        xml.writeStartElement("text");
+        xml.writeAttribute("top", String.valueOf(t.getTop()));
+        xml.writeAttribute("left", String.valueOf(t.getX()));
+        xml.writeAttribute("width", String.valueOf(t.getWidth()));
+        xml.writeAttribute("height", String.valueOf(t.getHeight()));
+        if (fontspecs) {
+            xml.writeAttribute("font", String.valueOf(fontId));
+        } else {
+            xml.writeAttribute("size", String.valueOf((int) t.getPointSize()));
+            xml.writeAttribute("family", t.getFontFamily());
+            xml.writeAttribute("face", t.getFontFace());
+            xml.writeAttribute("color", t.getForegroundColor());
+        }
+        if (block >= 0) {
+            xml.writeAttribute("block", String.valueOf(block));
+        }
+    }
+
+    /**
+     * Writes a fontspec element for each style in texts that hasn't been
+     * seen before.
+     *
+     * @return Answers the fontspec id of each of texts.
+     */
+    private int[] writeFontspecs(List<Text> texts) throws XMLStreamException {
+        int[] ids = new int[texts.size()];
+        List<FontSpec> added = new ArrayList<FontSpec>();
+
+        for (int i=0; i<texts.size(); i++) {
+            FontSpec spec = FontSpec.of(texts.get(i));
+            Integer id = fontspecIds.get(spec);
+            if (id == null) {
+                id = fontspecIds.size();
+                fontspecIds.put(spec, id);
+                added.add(spec);
+            }
+            ids[i] = id;
+        }
+
+        for (FontSpec spec : added) {
+            xml.writeCharacters("    ");
+            xml.writeEmptyElement("fontspec");
+            xml.writeAttribute("id", String.valueOf(fontspecIds.get(spec)));
+            xml.writeAttribute("size", String.valueOf(spec.getSize()));
+            xml.writeAttribute("family", spec.getFamily());
+            xml.writeAttribute("face", spec.getFace());
+            xml.writeAttribute("color", spec.getColor());
+            xml.writeCharacters("\n");
+        }
+
+        return ids;
+    }
+
+    /**
+     * A CDATA section can't contain its own terminator, so split the text
+     * across several sections wherever one appears.
+     */
+    private void writeCData(String s) throws XMLStreamException {
+        int from = 0;
+        int end = s.indexOf(CDATA_END);
+        while (end != -1) {
+            xml.writeCData(s.substring(from, end + 2));
+            from = end + 2;
+            end = s.indexOf(CDATA_END, from);
+        }
+        xml.writeCData(s.substring(from));
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
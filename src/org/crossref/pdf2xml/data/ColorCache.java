@@ -0,0 +1,55 @@
+package org.crossref.pdf2xml.data;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorState;
+
+/**
+ * Packs colours with Colors.pack(), remembering the last one packed, so
+ * that the many glyphs drawn one after another in the same colour cost
+ * a comparison each rather than an allocation. PDFBox changes a
+ * PDColorState in place when a colour is set, so its colour space and
+ * components are compared with those last packed, not just its identity.
+ * Not thread safe; use one per extractor and kind of colour.
+ */
+public class ColorCache {
+    
+    private PDColorState state = null;
+    
+    private PDColorSpace space = null;
+    
+    private float[] values = null;
+    
+    private int packed = Colors.BLACK;
+    
+    public int pack(PDColorState c) {
+        if (c != state || c.getColorSpace() != space 
+                || !hasValues(c.getCOSColorSpaceValue())) {
+            state = c;
+            space = c.getColorSpace();
+            values = c.getColorSpaceValue();
+            packed = Colors.pack(values);
+        }
+        return packed;
+    }
+    
+    /**
+     * @return Answers whether components holds the values last packed.
+     */
+    private boolean hasValues(COSArray components) {
+        if (components.size() != values.length) {
+            return false;
+        }
+        for (int i=0; i<values.length; i++) {
+            COSBase component = components.getObject(i);
+            if (!(component instanceof COSNumber)
+                    || ((COSNumber) component).floatValue() != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
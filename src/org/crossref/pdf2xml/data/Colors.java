@@ -0,0 +1,95 @@
+package org.crossref.pdf2xml.data;
+
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorState;
+
+/**
+ * Colours packed into an int as 0xrrggbb, and their "#rrggbb" strings.
+ */
+public final class Colors {
+    
+    public static final int BLACK = 0x000000;
+    
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    private static final int CACHE_SIZE = 256;
+    
+    /**
+     * A colour and its string. Immutable, so entries can be shared between
+     * threads without locking.
+     */
+    private static final class Entry {
+        final int rgb;
+        final String hex;
+        
+        Entry(int newRgb, String newHex) {
+            rgb = newRgb;
+            hex = newHex;
+        }
+    }
+    
+    /* A direct-mapped cache. A document uses only a handful of colours, so
+     * they rarely collide, and a collision only costs formatting the
+     * string again. */
+    private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+    
+    private Colors() {
+    }
+    
+    private static int component(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255)));
+    }
+    
+    /**
+     * @return Answers c packed as 0xrrggbb.
+     * 
+     * @see #pack(float[])
+     */
+    public static int pack(PDColorState c) {
+        return pack(c.getColorSpaceValue());
+    }
+    
+    /**
+     * @return Answers the components of a colour packed as 0xrrggbb. The
+     * colour space is guessed from the number of components: one is grey,
+     * three are red, green and blue, and four are cyan, magenta, yellow and
+     * black, converted naively rather than through a colour profile. So a
+     * separation tint, an indexed colour or a Lab colour comes out wrong,
+     * and any other number of components comes out black.
+     */
+    public static int pack(float[] values) {
+        if (values.length == 1) {
+            final int grey = component(values[0]);
+            return (grey << 16) | (grey << 8) | grey;
+        } else if (values.length == 3) {
+            return (component(values[0]) << 16) 
+                 | (component(values[1]) << 8)
+                 | component(values[2]);
+        } else if (values.length == 4) {
+            final float white = 1 - values[3];
+            return (component((1 - values[0]) * white) << 16)
+                 | (component((1 - values[1]) * white) << 8)
+                 | component((1 - values[2]) * white);
+        }
+        return BLACK;
+    }
+    
+    /**
+     * @return Answers rgb as a "#rrggbb" string. Strings are cached, so
+     * usually this allocates nothing.
+     */
+    public static String toHexString(int rgb) {
+        final int slot = (rgb ^ (rgb >>> 8) ^ (rgb >>> 16)) & (CACHE_SIZE - 1);
+        Entry e = CACHE[slot];
+        if (e == null || e.rgb != rgb) {
+            char[] cs = new char[7];
+            cs[0] = '#';
+            for (int i=6; i>0; i--) {
+                cs[i] = HEX_DIGITS[(rgb >> ((6 - i) * 4)) & 0xf];
+            }
+            e = new Entry(rgb, new String(cs));
+            CACHE[slot] = e;
+        }
+        return e.hex;
+    }
+
+}
@@ -0,0 +1,289 @@
+package org.crossref.pdf2xml.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * A finished Page held in a fraction of the memory. The geometry of its
+ * runs is kept in parallel float arrays, their styles as indexes into a
+ * StyleTable shared by the pages of a document, and their text in one
+ * char buffer, rather than as a Text object each. It can't be changed.
+ *
+ * Each call to an accessor makes Text objects for the runs it answers,
+ * once each, so a caller that walks the page should ask for its text
+ * once and keep the list. Texts from different calls are different
+ * objects, and changes to them are not kept. Spatial queries work on the
+ * arrays, and make Texts only for the runs they find. The index they use
+ * is shared with copies made by withNumber(), and may be queried from
+ * several threads at once.
+ */
+public class CompactPage implements PageView {
+
+	private PDRectangle clipBox;
+	private int number;
+
+	private StyleTable styles;
+
+	private int count;
+	private float[] x, top, baseline, width, height, pointSize;
+	private int[] style;
+
+	/* Run i's text is chars[textStarts[i]] up to, but not including,
+	 * chars[textStarts[i + 1]]. */
+	private char[] chars;
+	private int[] textStarts;
+
+	/* Row r holds the runs rowMembers[rowStarts[r]] up to, but not
+	 * including, rowMembers[rowStarts[r + 1]]. */
+	private float[] rowBaselines;
+	private int[] rowStarts;
+	private int[] rowMembers;
+
+	private Segmentation segmentation;
+	private int[] blocks;
+
+	/* Built when first queried. */
+	private TextIndex index = null;
+
+	public CompactPage(Page page, StyleTable newStyles) {
+		clipBox = page.getClipBox();
+		number = page.getNumber();
+		styles = newStyles;
+
+		List<Text> ts = page.getText();
+		count = ts.size();
+		x = new float[count];
+		top = new float[count];
+		baseline = new float[count];
+		width = new float[count];
+		height = new float[count];
+		pointSize = new float[count];
+		style = new int[count];
+		textStarts = new int[count + 1];
+
+		IdentityHashMap<Text, Integer> indexes = 
+			new IdentityHashMap<Text, Integer>(count);
+		int length = 0;
+		for (int i=0; i<count; i++) {
+			Text t = ts.get(i);
+			indexes.put(t, i);
+			x[i] = t.getX();
+			top[i] = t.getTop();
+			baseline[i] = t.getBaseline();
+			width[i] = t.getWidth();
+			height[i] = t.getHeight();
+			pointSize[i] = t.getPointSize();
+			style[i] = styles.indexOf(t);
+			textStarts[i] = length;
+			length += t.getRun().length();
+		}
+		textStarts[count] = length;
+
+		chars = new char[length];
+		for (int i=0; i<count; i++) {
+			String run = ts.get(i).getRun();
+			run.getChars(0, run.length(), chars, textStarts[i]);
+		}
+
+		final int rowCount = page.getRowCount();
+		rowBaselines = new float[rowCount];
+		rowStarts = new int[rowCount + 1];
+		rowMembers = new int[count];
+		int member = 0;
+		for (int r=0; r<rowCount; r++) {
+			rowBaselines[r] = page.getRowBaseline(r);
+			rowStarts[r] = member;
+			for (Text t : page.getRow(r)) {
+				rowMembers[member++] = indexes.get(t);
+			}
+		}
+		rowStarts[rowCount] = member;
+
+		// Runs keep their order, so the segmentation and blocks still
+		// hold.
+		segmentation = page.getSegmentation();
+		blocks = page.getBlocks();
+	}
+
+	private CompactPage(CompactPage page, int newNumber) {
+		clipBox = page.clipBox;
+		number = newNumber;
+		styles = page.styles;
+		count = page.count;
+		x = page.x;
+		top = page.top;
+		baseline = page.baseline;
+		width = page.width;
+		height = page.height;
+		pointSize = page.pointSize;
+		style = page.style;
+		chars = page.chars;
+		textStarts = page.textStarts;
+		rowBaselines = page.rowBaselines;
+		rowStarts = page.rowStarts;
+		rowMembers = page.rowMembers;
+		segmentation = page.segmentation;
+		blocks = page.blocks;
+		index = page.index;
+	}
+
+	/**
+	 * @return Answers a new Text for run i.
+	 */
+	private Text text(int i) {
+		final int s = style[i];
+		return Text.newFor(new String(chars, textStarts[i], 
+		                              textStarts[i + 1] - textStarts[i]),
+		                   x[i], top[i], baseline[i], width[i], height[i],
+		                   pointSize[i], styles.getFontInfo(s),
+		                   styles.getStrokeColor(s),
+		                   styles.getNonStrokeColor(s));
+	}
+
+	/**
+	 * @return Answers a new Text for each run in runs[from] up to, but not
+	 * including, runs[to].
+	 */
+	private List<Text> texts(int[] runs, int from, int to) {
+		List<Text> ts = new ArrayList<Text>(to - from);
+		for (int i=from; i<to; i++) {
+			ts.add(text(runs[i]));
+		}
+		return ts;
+	}
+
+	private List<Text> row(int r) {
+		return texts(rowMembers, rowStarts[r], rowStarts[r + 1]);
+	}
+
+	@Override
+	public PDRectangle getClipBox() {
+		return clipBox;
+	}
+
+	@Override
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return Answers a copy of this page numbered newNumber, which shares
+	 * its arrays.
+	 */
+	@Override
+	public CompactPage withNumber(int newNumber) {
+		return new CompactPage(this, newNumber);
+	}
+
+	@Override
+	public int[] getBlocks() {
+		return blocks;
+	}
+
+	@Override
+	public Segmentation getSegmentation() {
+		return segmentation;
+	}
+
+	/**
+	 * @return Answers the page's runs, each made into a new Text.
+	 */
+	@Override
+	public List<Text> getText() {
+		List<Text> ts = new ArrayList<Text>(count);
+		for (int i=0; i<count; i++) {
+			ts.add(text(i));
+		}
+		return ts;
+	}
+
+	@Override
+	public List<Text> getTextAtY(float y) {
+		final int r = Arrays.binarySearch(rowBaselines, y);
+		if (r >= 0) {
+			return row(r);
+		}
+		return new ArrayList<Text>();
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowBaselines.length;
+	}
+
+	@Override
+	public float getRowBaseline(int row) {
+		return rowBaselines[row];
+	}
+
+	@Override
+	public List<Text> getRow(int row) {
+		return row(row);
+	}
+
+	@Override
+	public List<List<Text>> getRowsBetween(float y1, float y2) {
+		int from = Arrays.binarySearch(rowBaselines, Math.min(y1, y2));
+		if (from < 0) {
+			from = -(from + 1);
+		}
+
+		List<List<Text>> between = new ArrayList<List<Text>>();
+		final float bottom = Math.max(y1, y2);
+		for (int r=from; r<rowBaselines.length && rowBaselines[r]<=bottom; r++) {
+			between.add(row(r));
+		}
+		return between;
+	}
+
+	private synchronized TextIndex getIndex() {
+		if (index == null) {
+			float[] right = new float[count];
+			float[] up = new float[count];
+			float[] down = new float[count];
+			for (int i=0; i<count; i++) {
+				float y1 = top[i], y2 = top[i] + height[i];
+				if (y1 == baseline[i] || y2 == baseline[i]) {
+					// Its Text works out a top or bottom that lies on the
+					// baseline from its font instead, so ask it.
+					Text t = text(i);
+					y1 = t.getTop();
+					y2 = t.getBottom();
+				}
+				right[i] = x[i] + width[i];
+				up[i] = Math.min(y1, y2);
+				down[i] = Math.max(y1, y2);
+			}
+			index = new TextIndex(x, up, right, down);
+		}
+		return index;
+	}
+
+	@Override
+	public List<Text> getTextIntersecting(float x, float y,
+	                                      float width, float height) {
+		final int[] found = getIndex().intersecting(x, y, width, height);
+		return texts(found, 0, found.length);
+	}
+
+	@Override
+	public List<Text> getTextNearest(float x, float y, int k) {
+		final int[] found = getIndex().nearest(x, y, k);
+		return texts(found, 0, found.length);
+	}
+
+	@Override
+	public Set<Float> getYPosWithText() {
+		Set<Float> yPos = new LinkedHashSet<Float>();
+		for (float y : rowBaselines) {
+			yPos.add(y);
+		}
+		return yPos;
+	}
+}
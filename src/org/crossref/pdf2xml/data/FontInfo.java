@@ -0,0 +1,131 @@
+package org.crossref.pdf2xml.data;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDCIDFont;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+
+/**
+ * The names and metrics of a font that Text needs, worked out once when
+ * the FontInfo is created rather than every time they are asked for.
+ * Metrics are held in glyph space, that is in thousandths of the font
+ * size.
+ */
+public class FontInfo {
+    
+    private PDFont font;
+    
+    private String baseFont, family, face;
+    
+    private float ascent, descent, boxAscent, boxDescent;
+    
+    /**
+     * A FontInfo with the names taken from a base font name but no
+     * metrics, for text that doesn't come from a PDFont.
+     */
+    public FontInfo(String newBaseFont) {
+        baseFont = newBaseFont == null ? "" : newBaseFont;
+        
+        String fontName = baseFont;
+        if (fontName.endsWith("MT")) {
+            fontName = fontName.substring(0, fontName.length() - 2);
+        }
+        String[] bits = fontName.split("\\+|-");
+        family = bits.length > 1 ? bits[1] : "";
+        face = bits.length > 2 ? bits[2] : "Normal";
+    }
+    
+    /**
+     * @return Answers a FontInfo with the given names but no metrics.
+     */
+    public static FontInfo forNames(String baseFont, String family, 
+                                    String face) {
+        FontInfo info = new FontInfo(baseFont);
+        info.family = family;
+        info.face = face;
+        return info;
+    }
+    
+    /**
+     * @return Answers a FontInfo for font. Prefer FontInfoCache.get(),
+     * which only does this work once per font.
+     */
+    public static FontInfo forFont(PDFont font) {
+        FontInfo info = new FontInfo(font.getBaseFont());
+        info.font = font;
+        
+        try {
+            PDRectangle bBox = font.getFontBoundingBox();
+            if (bBox != null) {
+                info.boxAscent = bBox.getUpperRightY();
+                info.boxDescent = bBox.getLowerLeftY();
+            }
+        } catch (IOException e) {
+            // Leave the bounding box empty.
+        }
+        
+        try {
+            PDFontDescriptor descriptor = null;
+            if (font instanceof PDSimpleFont) {
+                descriptor = ((PDSimpleFont) font).getFontDescriptor();
+            } else if (font instanceof PDCIDFont) {
+                descriptor = ((PDCIDFont) font).getFontDescriptor();
+            }
+            if (descriptor != null) {
+                info.ascent = descriptor.getAscent();
+                info.descent = -Math.abs(descriptor.getDescent());
+            }
+        } catch (IOException e) {
+            // Leave ascent and descent at zero.
+        }
+        
+        return info;
+    }
+    
+    /**
+     * @return Answers the font this information was worked out from, or
+     * null if it came from a name alone.
+     */
+    public PDFont getFont() {
+        return font;
+    }
+    
+    /**
+     * @return Answers whether other describes the same font as this.
+     */
+    public boolean isSameFont(FontInfo other) {
+        return other == this || (font != null && other.font == font);
+    }
+    
+    public String getBaseFont() {
+        return baseFont;
+    }
+    
+    public String getFamily() {
+        return family;
+    }
+    
+    public String getFace() {
+        return face;
+    }
+    
+    public float getAscent(float fontSize) {
+        return (ascent / 1000) * fontSize;
+    }
+    
+    public float getDescent(float fontSize) {
+        return (descent / 1000) * fontSize;
+    }
+    
+    public float getBoundingBoxAscent(float fontSize) {
+        return (boxAscent / 1000) * fontSize;
+    }
+    
+    public float getBoundingBoxDescent(float fontSize) {
+        return (boxDescent / 1000) * fontSize;
+    }
+
+}
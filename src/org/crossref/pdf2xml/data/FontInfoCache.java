@@ -0,0 +1,30 @@
+package org.crossref.pdf2xml.data;
+
+import java.util.IdentityHashMap;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Hands out one FontInfo per PDFont. A document typically has a handful
+ * of fonts shared by a great many runs, so each font's names and metrics
+ * are worked out only once. Not thread safe; use one per extractor.
+ */
+public class FontInfoCache {
+    
+    private IdentityHashMap<PDFont, FontInfo> infos = 
+        new IdentityHashMap<PDFont, FontInfo>();
+    
+    public FontInfo get(PDFont font) {
+        FontInfo info = infos.get(font);
+        if (info == null) {
+            info = FontInfo.forFont(font);
+            infos.put(font, info);
+        }
+        return info;
+    }
+    
+    public void clear() {
+        infos.clear();
+    }
+
+}
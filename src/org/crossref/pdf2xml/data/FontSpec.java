@@ -0,0 +1,64 @@
+package org.crossref.pdf2xml.data;
+
+/**
+ * The style of a run as it appears in the output: point size, font
+ * family and face, and foreground colour. Runs that look the same share
+ * an equal FontSpec.
+ */
+public class FontSpec {
+    
+    private int size;
+    
+    private String family, face, color;
+    
+    public FontSpec(int newSize, String newFamily, String newFace, 
+                    String newColor) {
+        size = newSize;
+        family = newFamily;
+        face = newFace;
+        color = newColor;
+    }
+    
+    public static FontSpec of(Text t) {
+        return new FontSpec((int) t.getPointSize(), t.getFontFamily(),
+                            t.getFontFace(), t.getForegroundColor());
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public String getFamily() {
+        return family;
+    }
+    
+    public String getFace() {
+        return face;
+    }
+    
+    public String getColor() {
+        return color;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FontSpec)) {
+            return false;
+        }
+        FontSpec other = (FontSpec) o;
+        return size == other.size
+                && family.equals(other.family)
+                && face.equals(other.face)
+                && color.equals(other.color);
+    }
+    
+    @Override
+    public int hashCode() {
+        int h = size;
+        h = 31 * h + family.hashCode();
+        h = 31 * h + face.hashCode();
+        h = 31 * h + color.hashCode();
+        return h;
+    }
+
+}
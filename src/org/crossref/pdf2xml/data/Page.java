@@ -1,46 +1,200 @@
 package org.crossref.pdf2xml.data;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
-public class Page {
+/**
+ * A page's text as it is extracted: text can be added, removed and
+ * queried by row or by position as the page is built up.
+ */
+public class Page implements PageView {
 	private static final ArrayList<Text> NOTHING = new ArrayList<Text>();
 	
 	private ArrayList<Text> texts;
-	private HashMap<Float, ArrayList<Text>> yPosMap;
 	private PDRectangle clipBox;
 	private int number;
 	
+	/* Rows of text, one per distinct baseline. rowBaselines is kept sorted
+	 * so that rows run from the top of the page to the bottom, and
+	 * rows.get(i) holds the text whose baseline is rowBaselines[i]. */
+	private float[] rowBaselines;
+	private ArrayList<ArrayList<Text>> rows;
+
+	/* Removed text is only noted here, and swept out of texts and the
+	 * rows the next time they are asked for. Text may be shared with
+	 * other pages, so this is kept by the page rather than on the text.
+	 * Null while nothing is waiting to be swept. */
+	private Set<Text> removed = null;
+
+	/* How many removals texts and each row may be waiting to have swept
+	 * out, and in all the rows. */
+	private int removedCount;
+	private int[] rowRemovedCounts;
+	private int rowRemovedTotal;
+
+	/* Built when first queried, and dropped whenever text is added or
+	 * removed. */
+	private TextIndex index = null;
+
+	/* Refers to text by index, so like the index it is dropped whenever
+	 * text is added or removed. */
+	private Segmentation segmentation = null;
+	private int[] blocks = null;
+
 	public Page(PDRectangle newClipBox, int newNumber) {
 		texts = new ArrayList<Text>();
-		yPosMap = new HashMap<Float, ArrayList<Text>>();
+		rowBaselines = new float[16];
+		rowRemovedCounts = new int[16];
+		rows = new ArrayList<ArrayList<Text>>();
 		clipBox = newClipBox;
 		number = newNumber;
 	}
 	
 	public void addText(Text t) {
 		texts.add(t);
+		index = null;
+		segmentation = null;
+		blocks = null;
 		
-		Float yPos = new Float(t.getBaseline());
-		if (yPosMap.containsKey(yPos)) {
-			ArrayList<Text> l = yPosMap.get(yPos);
-			l.add(t);
-		} else {
-			ArrayList<Text> l = new ArrayList<Text>();
-			l.add(t);
-			yPosMap.put(yPos, l);
+		final float yPos = t.getBaseline();
+		int row = findRow(yPos);
+		if (row < 0) {
+			row = -(row + 1);
+			insertRow(row, yPos);
 		}
+		rows.get(row).add(t);
 	}
 	
+	/**
+	 * Remove t in constant time. Text that isn't on this page is left
+	 * where it is. Lists previously answered by getText() or the row
+	 * accessors may still hold t until they are next asked for.
+	 */
 	public void removeText(Text t) {
-		if (texts.contains(t)) {
-			texts.remove(t);
-			yPosMap.get(t.getBaseline()).remove(t);
+		final int row = findRow(t.getBaseline());
+		if (row < 0) {
+			return;
+		}
+		if (removed == null) {
+			removed = Collections.newSetFromMap(
+				new IdentityHashMap<Text, Boolean>());
+		}
+		if (removed.add(t)) {
+			removedCount++;
+			rowRemovedCounts[row]++;
+			rowRemovedTotal++;
+			index = null;
+			segmentation = null;
+			blocks = null;
+		}
+	}
+
+	private void sweep(ArrayList<Text> ts) {
+		int kept = 0;
+		for (int i=0; i<ts.size(); i++) {
+			Text t = ts.get(i);
+			if (!removed.contains(t)) {
+				ts.set(kept++, t);
+			}
+		}
+		ts.subList(kept, ts.size()).clear();
+	}
+
+	/**
+	 * Forget the removed text once every list has been swept of it.
+	 */
+	private void forgetSwept() {
+		if (removedCount == 0 && rowRemovedTotal == 0) {
+			removed = null;
+		}
+	}
+
+	private ArrayList<Text> sweptRow(int row) {
+		ArrayList<Text> ts = rows.get(row);
+		if (rowRemovedCounts[row] > 0) {
+			sweep(ts);
+			rowRemovedTotal -= rowRemovedCounts[row];
+			rowRemovedCounts[row] = 0;
+			forgetSwept();
 		}
+		return ts;
+	}
+
+	/**
+	 * @return Answers the index of the row with baseline y, or if there is
+	 * no such row, (-(insertion point) - 1).
+	 */
+	private int findRow(float y) {
+		return Arrays.binarySearch(rowBaselines, 0, rows.size(), y);
+	}
+
+	private void insertRow(int row, float y) {
+		final int rowCount = rows.size();
+		if (rowCount == rowBaselines.length) {
+			rowBaselines = Arrays.copyOf(rowBaselines, rowCount * 2);
+			rowRemovedCounts = Arrays.copyOf(rowRemovedCounts, rowCount * 2);
+		}
+		System.arraycopy(rowBaselines, row,
+		                 rowBaselines, row + 1, rowCount - row);
+		System.arraycopy(rowRemovedCounts, row,
+		                 rowRemovedCounts, row + 1, rowCount - row);
+		rowBaselines[row] = y;
+		rowRemovedCounts[row] = 0;
+		rows.add(row, new ArrayList<Text>());
+	}
+
+	/**
+	 * @return Answers a copy of this page numbered newNumber. The copy
+	 * shares this page's Text objects, segmentation and blocks.
+	 */
+	public Page withNumber(int newNumber) {
+		Page copy = new Page(clipBox, newNumber);
+		for (Text t : getText()) {
+			copy.addText(t);
+		}
+		copy.segmentation = segmentation;
+		copy.blocks = blocks;
+		return copy;
+	}
+
+	/**
+	 * @return Answers the number of the layout block that each run, in the
+	 * order of getText(), belongs to, or null if the page's layout hasn't
+	 * been analysed.
+	 */
+	public int[] getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Set the block of each run, which must be in the order getText()
+	 * answers them now. Adding or removing text drops them.
+	 */
+	public void setBlocks(int[] newBlocks) {
+		blocks = newBlocks;
+	}
+
+	/**
+	 * @return Answers the lines and words of the page, or null if it
+	 * hasn't been segmented.
+	 */
+	public Segmentation getSegmentation() {
+		return segmentation;
+	}
+
+	/**
+	 * Set the lines and words of the page, which must refer to its text as
+	 * getText() answers it now. Adding or removing text drops them.
+	 */
+	public void setSegmentation(Segmentation newSegmentation) {
+		segmentation = newSegmentation;
 	}
 	
 	public PDRectangle getClipBox() {
@@ -48,6 +202,11 @@ public class Page {
 	}
 	
 	public List<Text> getText() {
+		if (removedCount > 0) {
+			sweep(texts);
+			removedCount = 0;
+			forgetSwept();
+		}
 		return texts;
 	}
 	
@@ -56,18 +215,102 @@ public class Page {
 	}
 	
 	public List<Text> getTextAtY(float y) {
-		Float fObj = new Float(y);
-		if (yPosMap.containsKey(fObj)) {
-			return yPosMap.get(fObj);
+		final int row = findRow(y);
+		if (row >= 0) {
+			return sweptRow(row);
 		}
 		return NOTHING;
 	}
 	
-	/** 
+	/**
+	 * @return Answers the number of distinct baselines on the page.
+	 */
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	/**
+	 * @return Answers the baseline of a row. Rows are numbered from the top
+	 * of the page down.
+	 */
+	public float getRowBaseline(int row) {
+		return rowBaselines[row];
+	}
+
+	/**
+	 * @return Answers the text whose baseline is that of a row. Rows are
+	 * numbered from the top of the page down.
+	 */
+	public List<Text> getRow(int row) {
+		return sweptRow(row);
+	}
+
+	/**
+	 * @return Answers, from the top of the page down, every row whose
+	 * baseline lies between y1 and y2 inclusive.
+	 */
+	public List<List<Text>> getRowsBetween(float y1, float y2) {
+		int from = findRow(Math.min(y1, y2));
+		if (from < 0) {
+			from = -(from + 1);
+		}
+
+		List<List<Text>> between = new ArrayList<List<Text>>();
+		final float bottom = Math.max(y1, y2);
+		for (int row=from; row<rows.size() && rowBaselines[row]<=bottom; row++) {
+			between.add(sweptRow(row));
+		}
+		return between;
+	}
+
+	private TextIndex getIndex() {
+		if (index == null) {
+			index = TextIndex.over(getText());
+		}
+		return index;
+	}
+
+	/**
+	 * @return Answers the text at each of indexes into getText().
+	 */
+	private List<Text> textAt(int[] indexes) {
+		List<Text> ts = getText();
+		List<Text> found = new ArrayList<Text>(indexes.length);
+		for (int i : indexes) {
+			found.add(ts.get(i));
+		}
+		return found;
+	}
+
+	/**
+	 * @return Answers, in the order of getText(), the text whose bounding
+	 * box (x, top, width, height) intersects the given rectangle. The
+	 * first query after the page changes builds a spatial index, which
+	 * later queries share.
+	 */
+	public List<Text> getTextIntersecting(float x, float y, 
+	                                      float width, float height) {
+		return textAt(getIndex().intersecting(x, y, width, height));
+	}
+
+	/**
+	 * @return Answers the k runs of text whose bounding boxes are nearest
+	 * to the point (x, y), nearest first, or all of them if there are
+	 * fewer than k.
+	 */
+	public List<Text> getTextNearest(float x, float y, int k) {
+		return textAt(getIndex().nearest(x, y, k));
+	}
+
+	/**
 	 * @return Answers a float for every y position that is incident with
-	 * the start of a Text.
+	 * the start of a Text, from the top of the page down.
 	 */
 	public Set<Float> getYPosWithText() {
-		return yPosMap.keySet();
+		Set<Float> yPos = new LinkedHashSet<Float>();
+		for (int row=0; row<rows.size(); row++) {
+			yPos.add(rowBaselines[row]);
+		}
+		return yPos;
 	}
-}
\ No newline at end of file
+}
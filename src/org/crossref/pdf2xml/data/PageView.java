@@ -0,0 +1,82 @@
+package org.crossref.pdf2xml.data;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * The text of an extracted page, for reading. A Page is built up and
+ * changed while its page is extracted; a finished page may instead be
+ * held as a CompactPage, which can only be read.
+ */
+public interface PageView {
+
+	public PDRectangle getClipBox();
+
+	public int getNumber();
+
+	/**
+	 * @return Answers a copy of this page numbered newNumber.
+	 */
+	public PageView withNumber(int newNumber);
+
+	public List<Text> getText();
+
+	public List<Text> getTextAtY(float y);
+
+	/**
+	 * @return Answers the number of distinct baselines on the page.
+	 */
+	public int getRowCount();
+
+	/**
+	 * @return Answers the baseline of a row. Rows are numbered from the top
+	 * of the page down.
+	 */
+	public float getRowBaseline(int row);
+
+	/**
+	 * @return Answers the text whose baseline is that of a row.
+	 */
+	public List<Text> getRow(int row);
+
+	/**
+	 * @return Answers, from the top of the page down, every row whose
+	 * baseline lies between y1 and y2 inclusive.
+	 */
+	public List<List<Text>> getRowsBetween(float y1, float y2);
+
+	/**
+	 * @return Answers, in the order of getText(), the text whose bounding
+	 * box (x, top, width, height) intersects the given rectangle.
+	 */
+	public List<Text> getTextIntersecting(float x, float y,
+	                                      float width, float height);
+
+	/**
+	 * @return Answers the k runs of text whose bounding boxes are nearest
+	 * to the point (x, y), nearest first, or all of them if there are
+	 * fewer than k.
+	 */
+	public List<Text> getTextNearest(float x, float y, int k);
+
+	/**
+	 * @return Answers a float for every y position that is incident with
+	 * the start of a Text, from the top of the page down.
+	 */
+	public Set<Float> getYPosWithText();
+
+	/**
+	 * @return Answers the number of the layout block that each run, in the
+	 * order of getText(), belongs to, or null if the page's layout hasn't
+	 * been analysed.
+	 */
+	public int[] getBlocks();
+
+	/**
+	 * @return Answers the lines and words of the page, or null if it
+	 * hasn't been segmented.
+	 */
+	public Segmentation getSegmentation();
+}
@@ -0,0 +1,99 @@
+package org.crossref.pdf2xml.data;
+
+/**
+ * The lines and words of a Page. Runs are referred to by their index in
+ * the page's getText(), and words by where they lie in their run's text,
+ * so a segmentation holds no Text objects and can be shared by a page, a
+ * CompactPage made from it and copies of either.
+ */
+public class Segmentation {
+
+	/* Line l holds the runs lineRuns[lineStarts[l]] up to, but not
+	 * including, lineRuns[lineStarts[l + 1]], from left to right. */
+	private int[] lineStarts;
+	private int[] lineRuns;
+
+	/* Run i has the words runWords[i] up to, but not including,
+	 * runWords[i + 1]. Word w is the characters wordBegins[w] up to
+	 * wordEnds[w] of its run's text, and lies across the page from
+	 * wordLefts[w] for wordWidths[w]. */
+	private int[] runWords;
+	private int[] wordBegins, wordEnds;
+	private float[] wordLefts, wordWidths;
+
+	public Segmentation(int[] newLineStarts, int[] newLineRuns,
+	                    int[] newRunWords, int[] newWordBegins,
+	                    int[] newWordEnds, float[] newWordLefts,
+	                    float[] newWordWidths) {
+		lineStarts = newLineStarts;
+		lineRuns = newLineRuns;
+		runWords = newRunWords;
+		wordBegins = newWordBegins;
+		wordEnds = newWordEnds;
+		wordLefts = newWordLefts;
+		wordWidths = newWordWidths;
+	}
+
+	public int getLineCount() {
+		return lineStarts.length - 1;
+	}
+
+	/**
+	 * @return Answers the number of runs in a line.
+	 */
+	public int getLineSize(int line) {
+		return lineStarts[line + 1] - lineStarts[line];
+	}
+
+	/**
+	 * @return Answers the index in Page.getText() of the i-th run of a
+	 * line, counting from the left.
+	 */
+	public int getLineRun(int line, int i) {
+		return lineRuns[lineStarts[line] + i];
+	}
+
+	public int getRunCount() {
+		return runWords.length - 1;
+	}
+
+	public int getWordCount() {
+		return runWords[runWords.length - 1];
+	}
+
+	/**
+	 * @return Answers the first of a run's words. Its words are numbered
+	 * from there up to, but not including, getRunWordEnd(run).
+	 */
+	public int getRunWordStart(int run) {
+		return runWords[run];
+	}
+
+	public int getRunWordEnd(int run) {
+		return runWords[run + 1];
+	}
+
+	/**
+	 * @return Answers the index in its run's text of a word's first
+	 * character.
+	 */
+	public int getWordBegin(int word) {
+		return wordBegins[word];
+	}
+
+	/**
+	 * @return Answers the index in its run's text of the character after
+	 * a word's last.
+	 */
+	public int getWordEnd(int word) {
+		return wordEnds[word];
+	}
+
+	public float getWordLeft(int word) {
+		return wordLefts[word];
+	}
+
+	public float getWordWidth(int word) {
+		return wordWidths[word];
+	}
+}
@@ -0,0 +1,79 @@
+package org.crossref.pdf2xml.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Numbers the distinct styles, a font and a pair of colours, of the runs
+ * in a document, so that a CompactPage can refer to each run's style by
+ * index. Safe to use from several threads, since a compact page may be
+ * read on one thread, by a listener or by whoever collects the pages of
+ * a parallel extraction, while the extractor adds styles for later pages
+ * on another.
+ */
+public class StyleTable {
+    
+    private static final class Style {
+        final FontInfo fontInfo;
+        final int strokeColor;
+        final int nonStrokeColor;
+        
+        Style(FontInfo newFontInfo, int newStrokeColor, 
+              int newNonStrokeColor) {
+            fontInfo = newFontInfo;
+            strokeColor = newStrokeColor;
+            nonStrokeColor = newNonStrokeColor;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            Style other = (Style) o;
+            return other.fontInfo == fontInfo
+                    && other.strokeColor == strokeColor
+                    && other.nonStrokeColor == nonStrokeColor;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(fontInfo) * 31 + strokeColor) 
+                   * 31 + nonStrokeColor;
+        }
+    }
+    
+    private ArrayList<Style> styles = new ArrayList<Style>();
+    
+    private HashMap<Style, Integer> indexes = new HashMap<Style, Integer>();
+    
+    /**
+     * @return Answers the index of t's style, adding it to the table if
+     * it is new.
+     */
+    public synchronized int indexOf(Text t) {
+        Style style = new Style(t.getFontInfo(), t.getStrokeRgb(),
+                                t.getForegroundRgb());
+        Integer index = indexes.get(style);
+        if (index == null) {
+            index = styles.size();
+            styles.add(style);
+            indexes.put(style, index);
+        }
+        return index;
+    }
+    
+    public synchronized int size() {
+        return styles.size();
+    }
+    
+    public synchronized FontInfo getFontInfo(int index) {
+        return styles.get(index).fontInfo;
+    }
+    
+    public synchronized int getStrokeColor(int index) {
+        return styles.get(index).strokeColor;
+    }
+    
+    public synchronized int getNonStrokeColor(int index) {
+        return styles.get(index).nonStrokeColor;
+    }
+
+}
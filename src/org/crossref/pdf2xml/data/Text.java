@@ -1,13 +1,11 @@
 package org.crossref.pdf2xml.data;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDCIDFont;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
 import org.apache.pdfbox.pdmodel.graphics.PDGraphicsState;
-import org.apache.pdfbox.pdmodel.graphics.color.PDColorState;
 import org.apache.pdfbox.util.TextPosition;
 
 public class Text implements Comparable<Text> {
@@ -15,22 +13,73 @@ public class Text implements Comparable<Text> {
 	private float x, baseline, width, height, pointSize, 
 	              descent, ascent, fontSize;
 	private String run;
-	private PDFont font;
-	private PDColorState strokeColor;
-	private PDColorState nonStrokeColor;
+	
+	/* While a run is being built up it is kept here rather than in run,
+	 * so that adding each glyph doesn't copy all those before it. It is
+	 * turned back into a String when the run is asked for. */
+	private StringBuilder runBuffer;
+	
+	/* Text added at the front of the run while it is being built, kept
+	 * reversed so that each addition goes on the end rather than moving
+	 * all that follows it. The run is this, reversed, then the rest. */
+	private StringBuilder prefixBuffer;
+	private FontInfo fontInfo;
+	/* Packed as 0xrrggbb by Colors.pack(). */
+	private int strokeColor;
+	private int nonStrokeColor;
+	
+	/* The width of a space in the run's font, from its first glyph. */
+	private float spaceWidth;
+	
+	/* Where each piece of the run, a glyph or a run merged into it, starts
+	 * in its text and lies across the page, so that the run can later be
+	 * split into words at the gaps between them. Null while the run is a
+	 * single piece, which spans its whole width.
+	 *
+	 * The pieces lie from pieceFirst in the arrays, with room either side
+	 * so that they can be added at the front as cheaply as at the end.
+	 * Their starts are kept less pieceOrigin, the length of the text
+	 * added at the front since, so that adding there moves none of them. */
+	private int[] pieceStarts;
+	private float[] pieceLefts, pieceRights;
+	private int pieceFirst, pieceCount, pieceOrigin;
+	
+	/* Only word segmentation and reading order look at pieces, so they
+	 * are kept only when asked for. */
+	private boolean keepPieces;
 	
 	public static Text newFor(TextPosition tp, PDGraphicsState gs) {
+		return newFor(tp, gs, FontInfo.forFont(tp.getFont()));
+	}
+	
+	/**
+	 * @param fontInfo The FontInfo for tp's font, usually from a
+	 * FontInfoCache so that it is shared with other runs in the font.
+	 */
+	public static Text newFor(TextPosition tp, PDGraphicsState gs,
+	                          FontInfo fontInfo) {
+		return newFor(tp, fontInfo, Colors.pack(gs.getStrokingColor()),
+		              Colors.pack(gs.getNonStrokingColor()));
+	}
+	
+	/**
+	 * @param strokeColor The stroking colour tp was drawn in, packed by
+	 * Colors.pack(), perhaps through a ColorCache. As is nonStrokeColor.
+	 */
+	public static Text newFor(TextPosition tp, FontInfo fontInfo,
+	                          int strokeColor, int nonStrokeColor) {
 		Text t = new Text();
 		t.x = tp.getXDirAdj();
 		t.baseline = tp.getYDirAdj();
-		t.font = tp.getFont();
-		t.strokeColor = gs.getStrokingColor();
-		t.nonStrokeColor = gs.getNonStrokingColor();
+		t.fontInfo = fontInfo;
+		t.strokeColor = strokeColor;
+		t.nonStrokeColor = nonStrokeColor;
 		t.run = tp.getCharacter();
 		t.width = tp.getWidth();
 		t.height = tp.getHeight();
 		t.pointSize = tp.getFontSizeInPt();
 		t.fontSize = tp.getYScale();
+		t.spaceWidth = tp.getWidthOfSpace();
 		
 		// Bump the width by the word spacing for each space in tp.
 		for (int i=0; i<tp.getCharacter().length(); i++) {
@@ -44,69 +93,84 @@ public class Text implements Comparable<Text> {
 		return t;
 	}
 	
+	/**
+	 * @return Answers a Text for a run whose position and style are already
+	 * known, rather than read from a TextPosition.
+	 */
+	public static Text newFor(String run, float x, float baseline, 
+	                          float width, float height, float pointSize,
+	                          FontInfo fontInfo, int strokeColor,
+	                          int nonStrokeColor) {
+	    Text t = new Text();
+	    t.run = run;
+	    t.x = x;
+	    t.baseline = baseline;
+	    t.width = width;
+	    t.height = height;
+	    t.pointSize = pointSize;
+	    t.fontSize = pointSize;
+	    t.fontInfo = fontInfo;
+	    t.strokeColor = strokeColor;
+	    t.nonStrokeColor = nonStrokeColor;
+	    return t;
+	}
+	
+	/**
+	 * @return Answers a Text for a run that has already been extracted,
+	 * for example one read back from stored output, whose top and height
+	 * are known rather than worked out from its font.
+	 */
+	public static Text newFor(String run, float x, float top, float baseline,
+	                          float width, float height, float pointSize,
+	                          FontInfo fontInfo, int strokeColor,
+	                          int nonStrokeColor) {
+	    Text t = newFor(run, x, baseline, width, height, pointSize, 
+	                    fontInfo, strokeColor, nonStrokeColor);
+	    t.ascent = baseline - top;
+	    t.descent = baseline - (top + height);
+	    return t;
+	}
+	
 	private static float looseness() {
 		return 1;
 	}
 	
-	private static float looseness(TextPosition tp, PDFont font) {
+	private static float looseness(TextPosition tp) {
 		return tp.getWidth() / 2;
 	}
 	
-	private static String getColorString(PDColorState c) {
-		String colorString = "";
-		
-		float[] rgb = c.getColorSpaceValue();
-		if (rgb.length == 1) {
-		    int grey = (int) rgb[0] * 255;
-		    colorString = Integer.toHexString(grey);
-		    if (colorString.length() == 1) {
-		        colorString = "0" + colorString;
-		    }
-		    colorString = colorString + colorString + colorString;
-		} else {
-    		for (int colorIndex=0; colorIndex<3; colorIndex++) {
-    		    int color = (int) rgb[colorIndex] * 255;
-    		    String s = Integer.toHexString(color);
-    		    if (s.length() == 1) {
-    		        s = "0" + s;
-    		    }
-    		    colorString += s;
-    		}
-		}
-		
-		return "#" + colorString;
+	public String getForegroundColor() {
+		return Colors.toHexString(nonStrokeColor);
 	}
 	
-	public String getForegroundColor() {
-		return getColorString(nonStrokeColor);
+	/**
+	 * @return Answers the foreground colour packed as 0xrrggbb.
+	 */
+	public int getForegroundRgb() {
+		return nonStrokeColor;
+	}
+	
+	/**
+	 * @return Answers the stroking colour packed as 0xrrggbb.
+	 */
+	public int getStrokeRgb() {
+		return strokeColor;
 	}
 	
 	public String getFontFamily() {
-		String fontName = font.getBaseFont();
-		if (fontName.endsWith("MT")) {
-		    fontName = fontName.substring(0, fontName.length() - 2);
-		}
-		String[] bits = fontName.split("\\+|-");
-		if (bits.length > 1) {
-			return bits[1];
-		}
-		return "";
+		return fontInfo.getFamily();
 	}
 	
 	public String getFontFace() {
-		String fontName = font.getBaseFont();
-		if (fontName.endsWith("MT")) {
-            fontName = fontName.substring(0, fontName.length() - 2);
-        }
-		String[] bits = fontName.split("\\+|-");
-		if (bits.length > 2) {
-			return bits[2];
-		}
-		return "Normal";
+		return fontInfo.getFace();
 	}
 	
 	public String getBaseFontName() {
-		return font.getBaseFont();
+		return fontInfo.getBaseFont();
+	}
+	
+	public FontInfo getFontInfo() {
+	    return fontInfo;
 	}
 	
 	public float getX() {
@@ -134,19 +198,19 @@ public class Text implements Comparable<Text> {
 	}
 	
 	public float getAscent() {
-	    return getAscent(font, fontSize);
+	    return fontInfo.getAscent(fontSize);
 	}
 	
 	public float getDescent() {
-	    return getDescent(font, fontSize);
+	    return fontInfo.getDescent(fontSize);
 	}
 	
 	public float getBoundingBoxDescent() {
-	    return getBoundingBoxDescent(font, fontSize);
+	    return fontInfo.getBoundingBoxDescent(fontSize);
 	}
 	
 	public float getBoundingBoxAscent() {
-        return getBoundingBoxAscent(font, fontSize);
+        return fontInfo.getBoundingBoxAscent(fontSize);
     }
 	
 	public static float getBoundingBoxDescent(PDFont font, float fontSize) {
@@ -171,38 +235,15 @@ public class Text implements Comparable<Text> {
         return 0.0f;
     }
 	
-	private static float getAscent(PDFont font, float fontSize) {
-	    try {
-	        if (font instanceof PDSimpleFont) {
-	            PDSimpleFont simpleFont = (PDSimpleFont) font;
-	            return (simpleFont.getFontDescriptor().getAscent() 
-	                        / 1000) * fontSize;
-	        } else if (font instanceof PDCIDFont) {
-	            PDCIDFont cidFont = (PDCIDFont) font;
-	            return (cidFont.getFontDescriptor().getAscent() 
-	                        / 1000) * fontSize;
-	        }
-	    } catch (IOException e) {
-            // fall through
-        }
-        return 0.0f;
-	}
-
-	private static float getDescent(PDFont font, float fontSize) {
-	    try {
-	        if (font instanceof PDSimpleFont) {
-	            PDSimpleFont simpleFont = (PDSimpleFont) font;
-	            return (-Math.abs(simpleFont.getFontDescriptor().getDescent()) 
-	                        / 1000) * fontSize;
-	        } else if (font instanceof PDCIDFont) {
-	            PDCIDFont cidFont = (PDCIDFont) font;
-	            return (-Math.abs(cidFont.getFontDescriptor().getDescent()) 
-	                        / 1000) * fontSize;
-	        }
-	    } catch (IOException e) {
-            // fall through
-        }
-	    return 0.0f;
+	/**
+	 * @return Answers the FontInfo for tp's font, which is usually this
+	 * run's own.
+	 */
+	private FontInfo fontInfoFor(TextPosition tp) {
+	    if (tp.getFont() == fontInfo.getFont()) {
+	        return fontInfo;
+	    }
+	    return FontInfo.forFont(tp.getFont());
 	}
 	
 	public float getWidth() {
@@ -217,12 +258,262 @@ public class Text implements Comparable<Text> {
 		return pointSize;
 	}
 
+	/**
+	 * @return Answers the width of a space in the run's font, or zero if
+	 * it isn't known.
+	 */
+	public float getSpaceWidth() {
+		return spaceWidth;
+	}
+	
+	/**
+	 * @return Answers the number of pieces the run was built from: the
+	 * glyphs and runs added to it, and itself.
+	 */
+	public int getPieceCount() {
+		return pieceStarts == null ? 1 : pieceCount;
+	}
+	
+	/**
+	 * @return Answers the index in the run's text of the first character
+	 * of a piece. Pieces are in the order of the text.
+	 */
+	public int getPieceStart(int piece) {
+		return pieceStarts == null 
+				? 0 : pieceStarts[pieceFirst + piece] + pieceOrigin;
+	}
+	
+	public float getPieceLeft(int piece) {
+		return pieceStarts == null ? x : pieceLefts[pieceFirst + piece];
+	}
+	
+	public float getPieceRight(int piece) {
+		return pieceStarts == null 
+				? x + width : pieceRights[pieceFirst + piece];
+	}
+	
+	/**
+	 * Keep, or not, the pieces the run is built from as glyphs and runs
+	 * are added to it, so that it can later be split at the gaps between
+	 * them. A run that doesn't keep them is a single piece however it was
+	 * built. Set before anything is added to the run.
+	 */
+	public void setKeepPieces(boolean newKeepPieces) {
+		keepPieces = newKeepPieces;
+	}
+	
+	/**
+	 * Start keeping pieces, with the run as it stands as the first. Called
+	 * before the run is changed.
+	 */
+	private void splitIntoPieces() {
+		if (pieceStarts == null) {
+			pieceStarts = new int[8];
+			pieceLefts = new float[8];
+			pieceRights = new float[8];
+			pieceStarts[0] = 0;
+			pieceLefts[0] = x;
+			pieceRights[0] = x + width;
+			pieceFirst = 0;
+			pieceCount = 1;
+			pieceOrigin = 0;
+		}
+	}
+	
+	/**
+	 * Make room for a piece before the first, or after the last if
+	 * atFront is false. The arrays are doubled when there is none, with
+	 * the room made on the side that needs it, so that adding a piece at
+	 * either end takes amortized constant time.
+	 */
+	private void makeRoom(boolean atFront) {
+		if (atFront ? pieceFirst > 0 
+		            : pieceFirst + pieceCount < pieceStarts.length) {
+			return;
+		}
+		final int capacity = Math.max(8, pieceCount * 2);
+		final int first = atFront ? capacity - pieceCount : 0;
+		int[] starts = new int[capacity];
+		float[] lefts = new float[capacity];
+		float[] rights = new float[capacity];
+		System.arraycopy(pieceStarts, pieceFirst, starts, first, pieceCount);
+		System.arraycopy(pieceLefts, pieceFirst, lefts, first, pieceCount);
+		System.arraycopy(pieceRights, pieceFirst, rights, first, pieceCount);
+		pieceStarts = starts;
+		pieceLefts = lefts;
+		pieceRights = rights;
+		pieceFirst = first;
+	}
+	
+	/**
+	 * Add a piece before the first. Text added at the front must already
+	 * have been counted in pieceOrigin.
+	 */
+	private void addFirstPiece(int start, float left, float right) {
+		makeRoom(true);
+		pieceFirst--;
+		pieceStarts[pieceFirst] = start - pieceOrigin;
+		pieceLefts[pieceFirst] = left;
+		pieceRights[pieceFirst] = right;
+		pieceCount++;
+	}
+	
+	private void addLastPiece(int start, float left, float right) {
+		makeRoom(false);
+		final int at = pieceFirst + pieceCount;
+		pieceStarts[at] = start - pieceOrigin;
+		pieceLefts[at] = left;
+		pieceRights[at] = right;
+		pieceCount++;
+	}
+	
+	/**
+	 * Add t's pieces at the front of this run's, or at the end if
+	 * before is false. Called before t's text is added to the run.
+	 */
+	private void addPieces(Text t, boolean before) {
+		if (!(spaceWidth > 0)) {
+			spaceWidth = t.spaceWidth;
+		}
+		if (!keepPieces) {
+			return;
+		}
+		splitIntoPieces();
+		if (before) {
+			pieceOrigin += t.runLength();
+			for (int i=t.getPieceCount() - 1; i>=0; i--) {
+				addFirstPiece(t.getPieceStart(i), 
+				              t.getPieceLeft(i), t.getPieceRight(i));
+			}
+		} else {
+			final int offset = runLength();
+			for (int i=0; i<t.getPieceCount(); i++) {
+				addLastPiece(offset + t.getPieceStart(i), 
+				             t.getPieceLeft(i), t.getPieceRight(i));
+			}
+		}
+	}
+	
+	/**
+	 * Split the run in two before one of its pieces, this run keeping the
+	 * pieces before it.
+	 * 
+	 * @return Answers a new Text, in the same style, for the rest of the
+	 * run from piece on.
+	 */
+	public Text splitAt(int piece) {
+		final String s = getRun();
+		final int at = getPieceStart(piece);
+		
+		Text rest = new Text();
+		rest.run = s.substring(at);
+		rest.x = getPieceLeft(piece);
+		rest.width = x + width - rest.x;
+		rest.baseline = baseline;
+		rest.height = height;
+		rest.pointSize = pointSize;
+		rest.fontSize = fontSize;
+		rest.ascent = ascent;
+		rest.descent = descent;
+		rest.fontInfo = fontInfo;
+		rest.strokeColor = strokeColor;
+		rest.nonStrokeColor = nonStrokeColor;
+		rest.spaceWidth = spaceWidth;
+		rest.keepPieces = keepPieces;
+		if (pieceCount - piece > 1) {
+			rest.splitIntoPieces();
+			rest.pieceCount = 0;
+			for (int i=piece; i<pieceCount; i++) {
+				rest.addLastPiece(getPieceStart(i) - at,
+				                  getPieceLeft(i), getPieceRight(i));
+			}
+		}
+		
+		run = s.substring(0, at);
+		width = getPieceRight(piece - 1) - x;
+		pieceCount = piece;
+		if (pieceCount == 1) {
+			pieceStarts = null;
+			pieceLefts = null;
+			pieceRights = null;
+		}
+		return rest;
+	}
+	
 	public String getRun() {
+		if (prefixBuffer != null) {
+			StringBuilder whole = new StringBuilder(runLength());
+			appendRunTo(whole);
+			run = whole.toString();
+			prefixBuffer = null;
+			runBuffer = null;
+		} else if (runBuffer != null) {
+			run = runBuffer.toString();
+			runBuffer = null;
+		}
 		return run;
 	}
+	
+	private StringBuilder runBuffer() {
+		if (runBuffer == null) {
+			runBuffer = new StringBuilder(run.length() + 16);
+			runBuffer.append(run);
+			run = null;
+		}
+		return runBuffer;
+	}
+	
+	private StringBuilder prefixBuffer() {
+		if (prefixBuffer == null) {
+			prefixBuffer = new StringBuilder(16);
+		}
+		return prefixBuffer;
+	}
+	
+	/**
+	 * @return Answers the text of the run that follows any prefix, without
+	 * turning it into a String.
+	 */
+	private CharSequence bodySoFar() {
+		return runBuffer != null ? runBuffer : run;
+	}
+	
+	private int runLength() {
+		final int prefixLength = 
+			prefixBuffer == null ? 0 : prefixBuffer.length();
+		return prefixLength + bodySoFar().length();
+	}
+	
+	/**
+	 * Append the text of the run so far to sb, without turning it into a
+	 * String.
+	 */
+	private void appendRunTo(StringBuilder sb) {
+		if (prefixBuffer != null) {
+			for (int i=prefixBuffer.length() - 1; i>=0; i--) {
+				sb.append(prefixBuffer.charAt(i));
+			}
+		}
+		sb.append(bodySoFar());
+	}
+	
+	/**
+	 * Append the text of the run so far to reversed, reversed, as a
+	 * prefixBuffer holds it.
+	 */
+	private void appendReversedRunTo(StringBuilder reversed) {
+		final CharSequence body = bodySoFar();
+		for (int i=body.length() - 1; i>=0; i--) {
+			reversed.append(body.charAt(i));
+		}
+		if (prefixBuffer != null) {
+			reversed.append(prefixBuffer);
+		}
+	}
 
 	public Text addBefore(Text t) {
-		run = t.run + run;
+		addPieces(t, true);
+		t.appendReversedRunTo(prefixBuffer());
 		width += x - t.x + t.width;
 		height = Math.max(height, t.height);
 		ascent = Math.max(ascent, t.getAscent());
@@ -231,7 +522,8 @@ public class Text implements Comparable<Text> {
 	}
 	
 	public Text addAfter(Text t) {
-		run += t.run;
+		addPieces(t, false);
+		t.appendRunTo(runBuffer());
 		width += t.x - (x + width) + t.width; 
 		height = Math.max(height, t.height);
 		ascent = Math.max(ascent, t.getAscent());
@@ -240,20 +532,37 @@ public class Text implements Comparable<Text> {
 	}
 	
 	public Text addBefore(TextPosition tp) {
-		run = tp.getCharacter() + run;
-		width += x - tp.getX() + tp.getWidth();
+		final String c = tp.getCharacter();
+		if (keepPieces) {
+			splitIntoPieces();
+			pieceOrigin += c.length();
+			addFirstPiece(0, tp.getXDirAdj(), 
+			              tp.getXDirAdj() + tp.getWidth());
+		}
+		StringBuilder prefix = prefixBuffer();
+		for (int i=c.length() - 1; i>=0; i--) {
+			prefix.append(c.charAt(i));
+		}
+		width += x - tp.getXDirAdj() + tp.getWidth();
 		height = Math.max(height, tp.getHeight());
-		ascent = Math.max(ascent, getAscent(tp.getFont(), tp.getYScale()));
-		descent = Math.min(descent, getDescent(tp.getFont(), tp.getYScale()));
+		FontInfo tpFontInfo = fontInfoFor(tp);
+		ascent = Math.max(ascent, tpFontInfo.getAscent(tp.getYScale()));
+		descent = Math.min(descent, tpFontInfo.getDescent(tp.getYScale()));
 		return this;
 	}
 	
 	public Text addAfter(TextPosition tp) {
-		run += tp.getCharacter();
-		width += tp.getX() - (x + width) + tp.getWidth();
+		if (keepPieces) {
+			splitIntoPieces();
+			addLastPiece(runLength(), 
+			             tp.getXDirAdj(), tp.getXDirAdj() + tp.getWidth());
+		}
+		runBuffer().append(tp.getCharacter());
+		width += tp.getXDirAdj() - (x + width) + tp.getWidth();
 		height = Math.max(height, tp.getHeight());
-		ascent = Math.max(ascent, getAscent(tp.getFont(), tp.getYScale()));
-        descent = Math.min(descent, getDescent(tp.getFont(), tp.getYScale()));
+		FontInfo tpFontInfo = fontInfoFor(tp);
+		ascent = Math.max(ascent, tpFontInfo.getAscent(tp.getYScale()));
+		descent = Math.min(descent, tpFontInfo.getDescent(tp.getYScale()));
 		return this;
 	}
 	
@@ -272,32 +581,44 @@ public class Text implements Comparable<Text> {
 	}
 	
 	public boolean isIncidentToLeft(TextPosition tp) {
-		final float mostAcceptableLeft = x - looseness(tp, font);
+		final float mostAcceptableLeft = x - looseness(tp);
 		final float mostAcceptableRight = x;
-		final float charRightX = tp.getX() + tp.getWidth();
+		final float charRightX = tp.getXDirAdj() + tp.getWidth();
 		
-		return baseline == tp.getY() 
+		return baseline == tp.getYDirAdj() 
 				&& charRightX >= mostAcceptableLeft
 				&& charRightX <= mostAcceptableRight;
 	}
 	
 	public boolean isIncidentToRight(TextPosition tp) {
-		final float mostAcceptableLeft = x + width;
-		final float mostAcceptableRight = x + width + looseness(tp, font);
+		// Kerning can pull a glyph back over the end of the run, so allow
+		// as much overlap as gap.
+		final float mostAcceptableLeft = x + width - looseness(tp);
+		final float mostAcceptableRight = x + width + looseness(tp);
 		
-		return baseline == tp.getY()
-				&& tp.getX() >= mostAcceptableLeft
-				&& tp.getX() <= mostAcceptableRight;
+		return baseline == tp.getYDirAdj()
+				&& tp.getXDirAdj() >= mostAcceptableLeft
+				&& tp.getXDirAdj() <= mostAcceptableRight;
 	}
 	
 	public boolean hasMatchingStyle(TextPosition tp, PDGraphicsState gs) {
-		return tp.getFont() == font
-				&& gs.getStrokingColor() == strokeColor
-				&& gs.getNonStrokingColor() == nonStrokeColor;
+		return hasMatchingStyle(tp, Colors.pack(gs.getStrokingColor()),
+		                        Colors.pack(gs.getNonStrokingColor()));
+	}
+	
+	/**
+	 * @return Answers whether tp, drawn in the given colours packed by
+	 * Colors.pack(), has the same style as this run.
+	 */
+	public boolean hasMatchingStyle(TextPosition tp, int tpStrokeColor,
+	                                int tpNonStrokeColor) {
+		return tp.getFont() == fontInfo.getFont()
+				&& tpStrokeColor == strokeColor
+				&& tpNonStrokeColor == nonStrokeColor;
 	}
 	
 	public boolean hasMatchingStyle(Text t) {
-		return t.font == font
+		return t.fontInfo.isSameFont(fontInfo)
 				&& t.strokeColor == strokeColor
 				&& t.nonStrokeColor == nonStrokeColor;
 	}
@@ -0,0 +1,250 @@
+package org.crossref.pdf2xml.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A uniform grid over the bounding boxes of a page's text, for finding
+ * the text in a region or near a point without looking at every run.
+ * The grid has about as many cells as there are runs, and each cell
+ * lists every run whose box overlaps it.
+ *
+ * Runs are referred to by their index in the page's text, so the index
+ * holds no Text objects, and a CompactPage can build one straight from
+ * its arrays. An index is a snapshot; it must be rebuilt when text is
+ * added to or removed from its page. Queries don't change it, so one
+ * index can be queried from several threads at once.
+ */
+class TextIndex {
+
+	/* The bounding box of each run, top above bottom. */
+	private float[] left, top, right, bottom;
+
+	private float minX, minY, cellWidth, cellHeight;
+	private int columns, rows;
+
+	/* The runs in cell c are entries[cellStarts[c]] up to, but not
+	 * including, entries[cellStarts[c + 1]]. */
+	private int[] cellStarts;
+	private int[] entries;
+
+	private static class Candidate {
+		float distance;
+		int index;
+
+		Candidate(float newDistance, int newIndex) {
+			distance = newDistance;
+			index = newIndex;
+		}
+	}
+
+	private static final Comparator<Candidate> FURTHEST_FIRST =
+		new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				return Float.compare(b.distance, a.distance);
+			}
+		};
+
+	/**
+	 * @return Answers an index over the bounding boxes of texts.
+	 */
+	static TextIndex over(List<Text> texts) {
+		final int n = texts.size();
+		float[] left = new float[n];
+		float[] top = new float[n];
+		float[] right = new float[n];
+		float[] bottom = new float[n];
+		for (int i=0; i<n; i++) {
+			Text t = texts.get(i);
+			final float y1 = t.getTop(), y2 = t.getBottom();
+			left[i] = t.getX();
+			right[i] = t.getX() + t.getWidth();
+			top[i] = Math.min(y1, y2);
+			bottom[i] = Math.max(y1, y2);
+		}
+		return new TextIndex(left, top, right, bottom);
+	}
+
+	/**
+	 * Index the boxes (newLeft[i], newTop[i], newRight[i], newBottom[i]),
+	 * each with its top no lower than its bottom. The arrays are kept, not
+	 * copied.
+	 */
+	TextIndex(float[] newLeft, float[] newTop, float[] newRight,
+	          float[] newBottom) {
+		left = newLeft;
+		top = newTop;
+		right = newRight;
+		bottom = newBottom;
+		final int n = left.length;
+
+		minX = Float.MAX_VALUE;
+		minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int i=0; i<n; i++) {
+			minX = Math.min(minX, left[i]);
+			minY = Math.min(minY, top[i]);
+			maxX = Math.max(maxX, right[i]);
+			maxY = Math.max(maxY, bottom[i]);
+		}
+
+		final int side = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+		columns = side;
+		rows = side;
+		cellWidth = n == 0 ? 1 : Math.max((maxX - minX) / columns, 1e-3f);
+		cellHeight = n == 0 ? 1 : Math.max((maxY - minY) / rows, 1e-3f);
+
+		// Count the runs in each cell, then fill them in.
+		cellStarts = new int[columns * rows + 1];
+		for (int i=0; i<n; i++) {
+			for (int r=row(top[i]); r<=row(bottom[i]); r++) {
+				for (int c=column(left[i]); c<=column(right[i]); c++) {
+					cellStarts[r * columns + c + 1]++;
+				}
+			}
+		}
+		for (int c=0; c<columns * rows; c++) {
+			cellStarts[c + 1] += cellStarts[c];
+		}
+		entries = new int[cellStarts[columns * rows]];
+		int[] filled = Arrays.copyOf(cellStarts, columns * rows);
+		for (int i=0; i<n; i++) {
+			for (int r=row(top[i]); r<=row(bottom[i]); r++) {
+				for (int c=column(left[i]); c<=column(right[i]); c++) {
+					entries[filled[r * columns + c]++] = i;
+				}
+			}
+		}
+	}
+
+	private int column(float x) {
+		final int c = (int) ((x - minX) / cellWidth);
+		return Math.max(0, Math.min(columns - 1, c));
+	}
+
+	private int row(float y) {
+		final int r = (int) ((y - minY) / cellHeight);
+		return Math.max(0, Math.min(rows - 1, r));
+	}
+
+	/**
+	 * @return Answers, in page order, the indexes of the runs whose boxes
+	 * intersect the rectangle, edges included.
+	 */
+	int[] intersecting(float x, float y, float width, float height) {
+		final float x2 = x + width, y2 = y + height;
+		if (left.length == 0) {
+			return new int[0];
+		}
+
+		// Runs that span several cells are met once in each.
+		BitSet seen = new BitSet(left.length);
+		int[] hits = new int[16];
+		int hitCount = 0;
+		for (int r=row(y); r<=row(y2); r++) {
+			for (int c=column(x); c<=column(x2); c++) {
+				final int cell = r * columns + c;
+				for (int e=cellStarts[cell]; e<cellStarts[cell + 1]; e++) {
+					final int i = entries[e];
+					if (!seen.get(i)) {
+						seen.set(i);
+						if (left[i] <= x2 && right[i] >= x
+								&& top[i] <= y2 && bottom[i] >= y) {
+							if (hitCount == hits.length) {
+								hits = Arrays.copyOf(hits, hitCount * 2);
+							}
+							hits[hitCount++] = i;
+						}
+					}
+				}
+			}
+		}
+
+		Arrays.sort(hits, 0, hitCount);
+		return Arrays.copyOf(hits, hitCount);
+	}
+
+	private float distance(int i, float x, float y) {
+		final float dx = Math.max(0, Math.max(left[i] - x, x - right[i]));
+		final float dy = Math.max(0, Math.max(top[i] - y, y - bottom[i]));
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * @return Answers the indexes of the k runs whose boxes are nearest to
+	 * (x, y), nearest first. A point inside a box is at distance zero from
+	 * it.
+	 */
+	int[] nearest(final float x, final float y, int k) {
+		if (left.length == 0 || k <= 0) {
+			return new int[0];
+		}
+
+		// Holds the nearest runs found so far, furthest at the head.
+		PriorityQueue<Candidate> best =
+			new PriorityQueue<Candidate>(k + 1, FURTHEST_FIRST);
+
+		BitSet seen = new BitSet(left.length);
+		final int cx = column(x), cy = row(y);
+		final int maxRing = Math.max(Math.max(cx, columns - 1 - cx),
+		                             Math.max(cy, rows - 1 - cy));
+
+		// Search rings of cells outwards from the one nearest the point,
+		// stopping once no unsearched cell can be nearer than the k-th
+		// nearest run found.
+		for (int ring=0; ring<=maxRing; ring++) {
+			for (int r=cy - ring; r<=cy + ring; r++) {
+				if (r < 0 || r >= rows) {
+					continue;
+				}
+				final boolean edgeRow = r == cy - ring || r == cy + ring;
+				for (int c=cx - ring; c<=cx + ring; c++) {
+					if (c < 0 || c >= columns
+							|| (!edgeRow && c != cx - ring && c != cx + ring)) {
+						continue;
+					}
+					final int cell = r * columns + c;
+					for (int e=cellStarts[cell]; e<cellStarts[cell + 1]; e++) {
+						final int i = entries[e];
+						if (!seen.get(i)) {
+							seen.set(i);
+							best.add(new Candidate(distance(i, x, y), i));
+							if (best.size() > k) {
+								best.poll();
+							}
+						}
+					}
+				}
+			}
+
+			if (best.size() == k) {
+				// How far the point is from any cell not yet searched.
+				// There is nothing beyond a side of the block of searched
+				// cells that has reached the edge of the grid.
+				final float inf = Float.POSITIVE_INFINITY;
+				final float reach = Math.min(
+					Math.min(cx - ring <= 0 ? inf
+					         : x - (minX + (cx - ring) * cellWidth),
+					         cx + ring >= columns - 1 ? inf
+					         : minX + (cx + ring + 1) * cellWidth - x),
+					Math.min(cy - ring <= 0 ? inf
+					         : y - (minY + (cy - ring) * cellHeight),
+					         cy + ring >= rows - 1 ? inf
+					         : minY + (cy + ring + 1) * cellHeight - y));
+				if (best.peek().distance <= reach) {
+					break;
+				}
+			}
+		}
+
+		int[] nearest = new int[best.size()];
+		for (int n=nearest.length - 1; n>=0; n--) {
+			nearest[n] = best.poll().index;
+		}
+		return nearest;
+	}
+}
@@ -12,22 +12,22 @@ import java.util.List;
 
 import javax.swing.JPanel;
 
-import org.crossref.pdf2xml.data.Page;
+import org.crossref.pdf2xml.data.PageView;
 import org.crossref.pdf2xml.data.Text;
 
 public class PageCanvas extends JPanel {
     
     private static final float WHEEL_PER_CLICK_ZOOM = 0.1f;
     
-    private Page currentPage;
+    private PageView currentPage;
     
     private int pageIndex;
     
-    private List<Page> pages;
+    private List<PageView> pages;
     
     private Dimension pageSize = new Dimension(600, 800);
     
-    public PageCanvas(Page newPage) {
+    public PageCanvas(PageView newPage) {
         currentPage = newPage;
         
         addMouseListener(new MouseListener() {
@@ -68,7 +68,7 @@ public class PageCanvas extends JPanel {
         setPreferredSize(standard);
     }
     
-    public PageCanvas(List<Page> newPages) {
+    public PageCanvas(List<PageView> newPages) {
         this(newPages.get(0));
         pages = newPages;
         pageIndex = 0;